@@ -33,6 +33,8 @@ package com.epaga.particles;
 
 import com.epaga.particles.emittershapes.EmitterSphere;
 import com.jme3.asset.AssetManager;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingVolume;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
@@ -40,15 +42,18 @@ import com.jme3.export.OutputCapsule;
 import com.jme3.material.Material;
 import com.jme3.material.RenderState;
 import com.jme3.math.ColorRGBA;
-import com.jme3.math.FastMath;
 import com.jme3.math.Matrix3f;
 import com.jme3.math.Vector3f;
 import com.epaga.particles.emittershapes.EmitterMesh;
 import com.epaga.particles.influencers.ParticleInfluencer;
+import com.epaga.particles.particle.ParticleAttributes;
 import com.epaga.particles.particle.ParticleData;
 import com.epaga.particles.particle.ParticleDataMesh;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleDataPointMesh;
 import com.epaga.particles.particle.ParticleDataTriMesh;
+import com.epaga.particles.particle.ParticleStorage;
+import com.epaga.particles.particle.ParticleVertexWriter;
 import com.epaga.particles.valuetypes.ColorValueType;
 import com.epaga.particles.valuetypes.ValueType;
 import com.epaga.particles.valuetypes.VectorValueType;
@@ -60,11 +65,19 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import com.jme3.util.SafeArrayList;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -81,7 +94,7 @@ public class Emitter extends Node {
   private String name;
   private EmitterShape emitterShape = new EmitterMesh();
   // Particle Display Meshes
-  private Class datameshType = ParticleDataTriMesh.class;
+  private Class<? extends ParticleDataMesh> datameshType = ParticleDataTriMesh.class;
   private Mesh templateMesh = null;
   private ParticleDataMesh mesh;
 
@@ -101,7 +114,80 @@ public class Emitter extends Node {
   private int maxParticles;
   private int activeParticleCount = 0;
   private Map<String, ParticleInfluencer> influencerMap = new HashMap<>();
-
+  // the enabled influencers sorted by priority, rebuilt whenever the influencers change
+  private ParticleInfluencer[] influencers = new ParticleInfluencer[0];
+  // the optional particle components the enabled influencers need
+  private EnumSet<ParticleComponent> particleComponents = EnumSet.noneOf(ParticleComponent.class);
+
+  // structure of arrays storage, used in place of the particles array when enabled and supported
+  private boolean useParticleStorage = false;
+  private ParticleStorage storage;
+  // per particle channels declared by the influencers
+  private ParticleAttributes attributes;
+  // keeps active particles packed at the start of the particle array
+  private boolean packParticles = false;
+  // writes the particle vertices in the update loop, for meshes that do not depend on the camera
+  private boolean writeDuringUpdate = false;
+  private boolean writingVertices = false;
+  // the particle mesh while its vertices are written during the update
+  private ParticleVertexWriter vertexWriter;
+  private boolean verticesWritten = false;
+  // emission points picked by emitBurst
+  private float[] burstPositions = new float[0];
+  private float[] burstDirections = new float[0];
+  private int[] burstIndexes = new int[0];
+  private final Vector3f burstPosition = new Vector3f();
+  private final Vector3f burstDirection = new Vector3f();
+
+  // parallel particle update
+  private boolean parallelUpdate = false;
+  private int parallelChunkSize = 2048;
+  private ForkJoinPool updatePool;
+  private ParticleInfluencer[] threadSafeInfluencers = new ParticleInfluencer[0];
+  private ParticleInfluencer[] serialInfluencers = new ParticleInfluencer[0];
+  private int threadSafeInfluencerCount;
+  // particles that died during the parallel update, hidden from the influencers until they are reset
+  private boolean[] expiredParticles = new boolean[0];
+
+  // fixed rate simulation, a time step of 0 simulates with the frame time
+  private float fixedTimeStep = 0;
+  private int maxSubSteps = 4;
+  private float stepAccumulator = 0;
+  private float interpolation = 1;
+
+  // simulation levels of detail, sorted by distance and picked when the emitter is rendered
+  private ArrayList<EmitterLodLevel> lodLevels = new ArrayList<>();
+  private EmitterLodLevel currentLodLevel;
+  private int lodFrameCount = 0;
+  private float lodAccumulatedTime = 0;
+  private float lodEmissionRemainder = 0;
+
+  // suspends the simulation of emitters that have not been rendered for a while
+  private boolean cullOffscreen = false;
+  private float offscreenDelay = 1.0f;
+  private float offscreenTime = 0;
+  private float suspendedTime = 0;
+
+  // set when the particles were simulated since the bounds were last refreshed
+  private boolean boundsDirty = false;
+  // the extents of the particles gathered during the last simulation step, and the bounds built from them
+  private final ParticleExtents particleExtents = new ParticleExtents();
+  private final BoundingBox particleBound = new BoundingBox();
+
+  // non looping emitters go dormant once they have finished
+  private boolean dormant = false;
+  private boolean dormantMeshBuilt = false;
+  private SafeArrayList<EmitterListener> listeners = new SafeArrayList<>(EmitterListener.class);
+  // set by the simulation, the listeners are notified on the render thread
+  private boolean finishedPending = false;
+
+  // per emitter random number generator, optionally seeded for repeatable effects
+  private ParticleRandom random = new ParticleRandom();
+  private boolean useRandomSeed = false;
+  private long randomSeed = 0;
+  // key and counter for the per particle, counter based random values
+  private long randomStreamSeed = random.nextLong();
+  private long spawnSerial = 0;
 
   // start attributes
   private ValueType startSpeed = new ValueType(1.0f);
@@ -112,9 +198,12 @@ public class Emitter extends Node {
   private ValueType lifeMax = new ValueType(1.0f);
 
   // Emitter info
-  private int nextIndex = 0;
+  // stack of inactive particle indexes, the top of the stack is the next particle to emit
+  private int[] freeParticles;
+  private int freeParticleCount = 0;
   private float targetInterval = .00015f, currentInterval = 0;
   private int emissionsPerSecond, totalParticlesThisEmission, particlesPerEmission;
+  private int maxEmissionsPerStep = 64;
   private boolean useStaticParticles = false;
   private boolean useRandomEmissionPoint = false;
   private boolean particlesFollowEmitter = true;
@@ -129,6 +218,14 @@ public class Emitter extends Node {
 
   // pre simulate the particle system so it starts as if it has been running
   private boolean preCalculate = false;
+  // simulated time of the warm up, 0 uses the longer of the duration and the maximum particle life
+  private float preCalculateTime = 0;
+  // length of the coarse warm up steps
+  private float preCalculateStep = 0.1f;
+  // milliseconds of warm up per frame, 0 warms up in a single frame
+  private float preCalculateBudget = 0;
+  private boolean preCalculated = false;
+  private float preCalculateRemaining = -1;
 
   // used to keep track of the current systems life
   private float currentDuration = 0.0f;
@@ -182,7 +279,7 @@ public class Emitter extends Node {
 
   }
 
-  public void setParticleMeshType(Class type, Mesh mesh) {
+  public void setParticleMeshType(Class<? extends ParticleDataMesh> type, Mesh mesh) {
     datameshType = type;
     templateMesh = mesh;
     initParticles(datameshType, templateMesh);
@@ -205,32 +302,218 @@ public class Emitter extends Node {
   }
 
   private void initParticles() {
-    particles = new ParticleData[maxParticles];
-
-    for (int i = 0; i < maxParticles; i++) {
-      particles[i] = new ParticleData();
-      particles[i].emitter = this;
-      particles[i].index = i;
-      particles[i].reset();
-    }
+    emitterShape.setRandom(random);
+    storage = null;
+    particles = null;
+    // influencers declare their channels again in initializeInfluencer
+    attributes = new ParticleAttributes(maxParticles);
+    refreshParticleComponents();
 
     // initialize particle data
     mesh.initParticleData(this, maxParticles);
+    particleExtents.clear();
+    boundsDirty = true;
+    verticesWritten = false;
 
-    // Run model init for any sort of special setup that needs to be done on initialization
+    // Run model init for any sort of special setup that needs to be done on initialization. Before the
+    // particles are reset below, since influencers reset them with the emitter's random values.
     for (ParticleInfluencer influencer : influencerMap.values()) {
       influencer.initializeInfluencer(this);
     }
+
+    if (useParticleStorage && canUseParticleStorage()) {
+      storage = new ParticleStorage(this, maxParticles);
+      for (int i = 0; i < maxParticles; i++) {
+        storage.reset(i);
+      }
+    } else {
+      particles = new ParticleData[maxParticles];
+
+      for (int i = 0; i < maxParticles; i++) {
+        particles[i] = new ParticleData();
+        particles[i].emitter = this;
+        particles[i].index = i;
+        particles[i].setComponents(particleComponents);
+        particles[i].reset();
+      }
+    }
+    resetFreeParticles();
   }
   
   public void reset() {
-    for (int i = 0; i < maxParticles; i++) {
-      particles[i].reset();
+    if (useRandomSeed) {
+      applyRandomSeed();
+    }
+    // reset from the end so packed particles never swap into an already reset slot
+    for (int i = maxParticles - 1; i >= 0; i--) {
+      if (storage != null) {
+        storage.reset(i);
+      } else {
+        particles[i].reset();
+      }
     }
     
     activeParticleCount = 0;
-    nextIndex = 0;
+    resetFreeParticles();
     currentDuration = 0.0f;
+    wake();
+    preCalculated = false;
+    preCalculateRemaining = -1;
+    stepAccumulator = 0;
+    interpolation = 1;
+  }
+
+  private void resetFreeParticles() {
+    if (freeParticles == null || freeParticles.length != maxParticles) {
+      freeParticles = new int[maxParticles];
+    }
+    // pushed in reverse so the lowest index is emitted first
+    for (int i = 0; i < maxParticles; i++) {
+      freeParticles[i] = maxParticles - 1 - i;
+    }
+    freeParticleCount = maxParticles;
+  }
+
+  private boolean canUseParticleStorage() {
+    if (!mesh.supportsParticleStorage()) {
+      Logger.getLogger(Emitter.class.getName()).log(Level.WARNING,
+          "{0} does not support particle storage, falling back to particle objects", mesh.getClass().getSimpleName());
+      return false;
+    }
+    for (ParticleInfluencer influencer : influencerMap.values()) {
+      if (!influencer.supportsParticleStorage()) {
+        Logger.getLogger(Emitter.class.getName()).log(Level.WARNING,
+            "{0} does not support particle storage, falling back to particle objects", influencer.getClass().getSimpleName());
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Keeps the particle data in flat primitive arrays (see ParticleStorage) instead of one ParticleData object per
+   * particle. Only used when the particle mesh and every influencer support it, otherwise the emitter falls back
+   * to particle objects.
+   *
+   * @param useParticleStorage true to store particles in primitive arrays
+   */
+  public void setUseParticleStorage(boolean useParticleStorage) {
+    if (this.useParticleStorage != useParticleStorage) {
+      this.useParticleStorage = useParticleStorage;
+      initParticles(datameshType, templateMesh);
+    }
+  }
+
+  public boolean isUseParticleStorage() {
+    return useParticleStorage;
+  }
+
+  /**
+   * Returns the particle storage if the emitter is currently running in storage mode
+   *
+   * @return The particle storage or null if particle objects are used
+   */
+  public ParticleStorage getParticleStorage() {
+    return storage;
+  }
+
+  /**
+   * Keeps the active particles packed densely at the start of the particle array. When a particle dies it is
+   * swapped with the last active particle, so updates and the particle meshes only need to process the first
+   * getActiveParticleCount() particles. Particle indexes are not stable in this mode.
+   *
+   * @param packParticles true to keep active particles packed
+   */
+  public void setPackParticles(boolean packParticles) {
+    if (this.packParticles != packParticles) {
+      this.packParticles = packParticles;
+      initParticles(datameshType, templateMesh);
+    }
+  }
+
+  public boolean isPackParticles() {
+    return packParticles;
+  }
+
+  /**
+   * Writes the particle vertices in the same loop that moves the particles, instead of going over the
+   * particles a second time when rendering. Only used for meshes that implement ParticleVertexWriter and do not
+   * depend on the camera, for the tri mesh that is the UNIT_X, UNIT_Y, UNIT_Z and Velocity billboard modes, and when the particles are
+   * updated serially without a fixed time step. Particles changed outside of the emitter's update are picked
+   * up if they are emitted or killed, other changes only show after the next update.
+   *
+   * @param writeDuringUpdate true to write the vertices during the update when possible
+   */
+  public void setWriteDuringUpdate(boolean writeDuringUpdate) {
+    this.writeDuringUpdate = writeDuringUpdate;
+    verticesWritten = false;
+  }
+
+  public boolean isWriteDuringUpdate() {
+    return writeDuringUpdate;
+  }
+
+  /**
+   * Returns the random number generator used by this emitter, its shape and its influencers.
+   * The generator is not thread safe and must only be used from the thread updating the emitter.
+   *
+   * @return The emitter's random number generator
+   */
+  public ParticleRandom getRandom() {
+    return random;
+  }
+
+  /**
+   * Seeds the emitter's random number generator so the effect plays out the same way
+   * every time the emitter is reset
+   *
+   * @param seed The seed to use
+   */
+  public void setRandomSeed(long seed) {
+    this.randomSeed = seed;
+    this.useRandomSeed = true;
+    applyRandomSeed();
+  }
+
+  private void applyRandomSeed() {
+    random.setSeed(randomSeed);
+    randomStreamSeed = ParticleRandom.mix64(~randomSeed);
+    spawnSerial = 0;
+  }
+
+  /**
+   * Removes any seed set with setRandomSeed, the generator keeps its current state
+   */
+  public void clearRandomSeed() {
+    this.useRandomSeed = false;
+  }
+
+  public boolean hasRandomSeed() {
+    return useRandomSeed;
+  }
+
+  public long getRandomSeed() {
+    return randomSeed;
+  }
+
+  /**
+   * Returns the seed of the counter based random stream particles draw their per particle random values from.
+   * Derived from the random seed when one is set.
+   *
+   * @return The random stream seed
+   */
+  public long getRandomStreamSeed() {
+    return randomStreamSeed;
+  }
+
+  /**
+   * Returns a new serial number for a particle being emitted. Serial numbers are unique within the emitter
+   * and, together with the random stream seed, key the particle's random values.
+   *
+   * @return The spawn serial
+   */
+  public long nextSpawnSerial() {
+    return spawnSerial++;
   }
 
   /**
@@ -240,6 +523,7 @@ public class Emitter extends Node {
    */
   public final void setShape(EmitterShape shape) {
     emitterShape = shape;
+    emitterShape.setRandom(random);
   }
 
   /**
@@ -281,6 +565,21 @@ public class Emitter extends Node {
     return particlesPerEmission;
   }
 
+  /**
+   * Sets the most emissions run in a single catch up step. The steps used to pre calculate, catch up after
+   * being off screen or make up for the frames skipped by a LOD level emit once for every emission interval
+   * they cover up to this limit, the rest of the time is dropped. Normal frames emit at most once.
+   *
+   * @param maxEmissionsPerStep The maximum number of emissions per step
+   */
+  public void setMaxEmissionsPerStep(int maxEmissionsPerStep) {
+    this.maxEmissionsPerStep = Math.max(1, maxEmissionsPerStep);
+  }
+
+  public int getMaxEmissionsPerStep() {
+    return maxEmissionsPerStep;
+  }
+
   /**
    * Particles are created as staticly placed, with no velocity. Particles set
    * to static with remain in place and follow the particles shape's animations.
@@ -326,6 +625,7 @@ public class Emitter extends Node {
 
   public void setUseRandomEmissionPoint(boolean useRandomEmissionPoint) {
     this.useRandomEmissionPoint = useRandomEmissionPoint;
+    refreshParticleComponents();
   }
 
   public boolean getUseRandomEmissionPoint() {
@@ -438,8 +738,9 @@ public class Emitter extends Node {
 
   public final void addInfluencer(ParticleInfluencer influencer, boolean reload) {
     influencerMap.put(influencer.getClass().getName(), influencer);
+    refreshInfluencers();
 
-    if (reload) {
+    if (reload || (storage != null && !influencer.supportsParticleStorage())) {
       initParticles(datameshType, templateMesh);
     }
   }
@@ -455,6 +756,7 @@ public class Emitter extends Node {
 
   public final void removeInfluencer(Class<? extends ParticleInfluencer> influencer, boolean reload) {
     influencerMap.remove(influencer.getName());
+    refreshInfluencers();
 
     if (reload) {
       initParticles(datameshType, templateMesh);
@@ -470,6 +772,75 @@ public class Emitter extends Node {
     return this.influencerMap.values();
   }
 
+  /**
+   * Returns the per particle channels influencers declare for their own values
+   *
+   * @return The emitter's particle attributes
+   */
+  public ParticleAttributes getAttributes() {
+    return attributes;
+  }
+
+  /**
+   * Returns the enabled influencers in the order they are applied, highest priority first. Influencers with the
+   * same priority are ordered by class name so the order does not depend on the map. The returned array is
+   * shared and must not be modified.
+   *
+   * @return The enabled influencers
+   */
+  public ParticleInfluencer[] getInfluencers() {
+    return influencers;
+  }
+
+  /**
+   * Rebuilds the list of enabled influencers. Called when influencers are added, removed, enabled or disabled,
+   * needs to be called by hand when an influencer's priority changes.
+   */
+  public void refreshInfluencers() {
+    ArrayList<ParticleInfluencer> enabled = new ArrayList<>(influencerMap.size());
+    for (ParticleInfluencer influencer : influencerMap.values()) {
+      if (influencer.isEnabled()) {
+        enabled.add(influencer);
+      }
+    }
+    enabled.sort((a, b) -> a.getPriority() != b.getPriority()
+        ? Integer.compare(b.getPriority(), a.getPriority())
+        : a.getClass().getName().compareTo(b.getClass().getName()));
+    influencers = enabled.toArray(new ParticleInfluencer[enabled.size()]);
+    refreshParticleComponents();
+  }
+
+  /**
+   * Returns the optional particle components allocated on this emitter's particles
+   *
+   * @return The components the enabled influencers and the emitter settings need
+   */
+  public EnumSet<ParticleComponent> getParticleComponents() {
+    return EnumSet.copyOf(particleComponents);
+  }
+
+  private void refreshParticleComponents() {
+    EnumSet<ParticleComponent> components = EnumSet.noneOf(ParticleComponent.class);
+    for (ParticleInfluencer influencer : influencers) {
+      components.addAll(influencer.getRequiredComponents());
+    }
+    if (useRandomEmissionPoint) {
+      components.add(ParticleComponent.RANDOM_OFFSET);
+    }
+    if (billboardMode == BillboardMode.Normal || billboardMode == BillboardMode.Normal_Y_Up) {
+      components.add(ParticleComponent.EMISSION_NORMAL);
+    }
+    if (components.equals(particleComponents)) {
+      return;
+    }
+    particleComponents = components;
+    if (particles != null) {
+      for (ParticleData p : particles) {
+        p.setComponents(components);
+      }
+    }
+  }
+
   /**
    * Returns the influencer with a given name
    * @param type
@@ -499,6 +870,10 @@ public class Emitter extends Node {
     this.enabled = enabled;
   }
 
+  public boolean isEnabled() {
+    return enabled;
+  }
+
   public ValueType getStartSpeed() {
     return startSpeed;
   }
@@ -521,6 +896,7 @@ public class Emitter extends Node {
 
   public void setDuration(float duration) {
     this.duration = duration;
+    wake();
   }
 
   public boolean isLooping() {
@@ -529,16 +905,73 @@ public class Emitter extends Node {
 
   public void setLooping(boolean looping) {
     this.looping = looping;
+    wake();
   }
 
   public boolean isPreCalculate() {
     return preCalculate;
   }
 
+  /**
+   * Fast forwards the emitter to a steady state the first time it is simulated, so looping effects start as
+   * if they had been running for a while. The warm up runs coarse steps without building meshes or updating
+   * bounds.
+   *
+   * @param preCalculate true to warm up the emitter
+   */
   public void setPreCalculate(boolean preCalculate) {
     this.preCalculate = preCalculate;
   }
 
+  /**
+   * Sets how much time the warm up simulates
+   *
+   * @param preCalculateTime The time in seconds, 0 uses the longer of the duration and the maximum particle life
+   */
+  public void setPreCalculateTime(float preCalculateTime) {
+    this.preCalculateTime = preCalculateTime;
+  }
+
+  public float getPreCalculateTime() {
+    return preCalculateTime;
+  }
+
+  /**
+   * Sets the length of the coarse steps the warm up is simulated with
+   *
+   * @param preCalculateStep The step length in seconds
+   */
+  public void setPreCalculateStep(float preCalculateStep) {
+    this.preCalculateStep = preCalculateStep;
+  }
+
+  public float getPreCalculateStep() {
+    return preCalculateStep;
+  }
+
+  /**
+   * Limits how long the warm up may run each frame. Warm ups that don't fit continue on the next frames and the
+   * emitter is not shown until it has finished.
+   *
+   * @param preCalculateBudget The time in milliseconds per frame, 0 to always finish in a single frame
+   */
+  public void setPreCalculateBudget(float preCalculateBudget) {
+    this.preCalculateBudget = preCalculateBudget;
+  }
+
+  public float getPreCalculateBudget() {
+    return preCalculateBudget;
+  }
+
+  /**
+   * Checks if the emitter is still being fast forwarded
+   *
+   * @return true while the warm up has not finished
+   */
+  public boolean isPreCalculating() {
+    return preCalculate && !preCalculated;
+  }
+
   public float getCurrentDuration() {
     return currentDuration;
   }
@@ -580,6 +1013,8 @@ public class Emitter extends Node {
 
   public void setBillboardMode(BillboardMode billboardMode) {
     this.billboardMode = billboardMode;
+    verticesWritten = false;
+    refreshParticleComponents();
   }
 
   public void setDebug(AssetManager manager, boolean debugEmitter, boolean debugParticles) {
@@ -646,8 +1081,277 @@ public class Emitter extends Node {
   }
 
   public void updateEmitter(float tpf) {
+    simulate(tpf);
+    updateSimulatedBound();
+  }
+
+  /**
+   * Refreshes the emitter's bounds if the particles were simulated since the last refresh. The particle mesh
+   * is handed the box gathered while the particles were moved instead of scanning its vertices. Emitter
+   * listeners are notified of a finish from here as well. Must be called from the render thread.
+   */
+  void updateSimulatedBound() {
+    if (finishedPending) {
+      finishedPending = false;
+      for (EmitterListener listener : listeners.getArray()) {
+        listener.onEmitterFinished(this);
+      }
+    }
+
+    // keep the emitter itself inside the bounds so it is not culled while it has no particles
+    Vector3f origin = particlesFollowEmitter ? Vector3f.ZERO : getWorldTranslation();
+    if (!boundsDirty) {
+      // suspended emitters are not simulated, but world space bounds still have to follow the emitter or it
+      // could stay culled at its old position for good
+      if (!isSuspended() || particleExtents.contains(origin.x, origin.y, origin.z)) {
+        return;
+      }
+    }
+    boundsDirty = false;
+    particleExtents.include(origin.x, origin.y, origin.z);
+    float padding = mesh != null ? particleExtents.maxSize * mesh.getParticleExtent() : 0;
+    particleExtents.toBoundingBox(padding, particleBound);
+
+    for (Spatial s : getChildren()) {
+      if (s != particleGeo) {
+        s.updateModelBound();
+      } else if (mesh.usesSimulatedBound()) {
+        particleGeo.setModelBound(particleBound.clone(mesh.getBound()));
+      } else {
+        mesh.updateBound();
+        mesh.getBound().mergeLocal(particleBound);
+        particleGeo.setModelBound(mesh.getBound());
+      }
+    }
+  }
+
+  /**
+   * Returns the box around the particles gathered during the last simulation step, in the space of the
+   * particle mesh
+   *
+   * @return The simulated particle bounds
+   */
+  public BoundingBox getParticleBound() {
+    return particleBound;
+  }
+
+  /**
+   * Runs the particle simulation and emission for the slice of time without touching the scene graph. This
+   * does not update the emitter's bounds, updateEmitter() and ParticleSystemState refresh them on the render
+   * thread afterwards. Different emitters can be simulated on different threads at the same time as long as they
+   * do not share shapes or influencers.
+   *
+   * @param tpf The delta time for the last frame
+   */
+  public void simulate(float tpf) {
+    simulate(tpf, null);
+  }
+
+  /**
+   * Simulates the emitter, splitting large particle updates onto the given pool
+   */
+  void simulate(float tpf, ForkJoinPool splitPool) {
+    if (dormant) {
+      return;
+    }
+
+    if (enabled && isPreCalculating() && !preCalculate(splitPool)) {
+      return;
+    }
+
+    if (cullOffscreen && enabled) {
+      // reset whenever the emitter is rendered
+      offscreenTime += tpf;
+      if (offscreenTime > offscreenDelay) {
+        suspendedTime += tpf;
+        return;
+      }
+      if (suspendedTime > 0) {
+        catchUp(suspendedTime, splitPool);
+        suspendedTime = 0;
+      }
+    }
+
+    boolean catchingUp = false;
+    if (currentLodLevel != null && currentLodLevel.getUpdateInterval() > 1) {
+      // distant emitters only update every few frames with the time of the skipped frames, step() emits for
+      // every interval of the skipped frames as well
+      lodAccumulatedTime += tpf;
+      if (++lodFrameCount < currentLodLevel.getUpdateInterval()) {
+        return;
+      }
+      tpf = lodAccumulatedTime;
+      lodAccumulatedTime = 0;
+      lodFrameCount = 0;
+      catchingUp = true;
+    } else if (lodAccumulatedTime > 0) {
+      // the level changed while updates were being skipped
+      tpf += lodAccumulatedTime;
+      lodAccumulatedTime = 0;
+      lodFrameCount = 0;
+      catchingUp = true;
+    }
+
+    if (fixedTimeStep <= 0) {
+      step(tpf, catchingUp, splitPool);
+      interpolation = 1;
+      return;
+    }
+
+    stepAccumulator += tpf;
+    int steps = 0;
+    while (stepAccumulator >= fixedTimeStep && steps < maxSubSteps) {
+      step(fixedTimeStep, false, splitPool);
+      stepAccumulator -= fixedTimeStep;
+      steps++;
+    }
+    if (stepAccumulator >= fixedTimeStep) {
+      // too far behind, drop the backlog instead of trying to catch up over the next frames
+      stepAccumulator %= fixedTimeStep;
+    }
+    interpolation = stepAccumulator / fixedTimeStep;
+  }
+
+  /**
+   * Runs the warm up for at most the time budget
+   *
+   * @return true once the warm up has finished
+   */
+  private boolean preCalculate(ForkJoinPool splitPool) {
+    if (preCalculateRemaining < 0) {
+      preCalculateRemaining = preCalculateTime > 0 ? preCalculateTime : getSteadyStateTime();
+    }
+    long deadline = preCalculateBudget > 0 ? System.nanoTime() + (long) (preCalculateBudget * 1000000) : 0;
+    preCalculateRemaining = fastForward(preCalculateRemaining, deadline, splitPool);
+    if (preCalculateRemaining > 0) {
+      // the bounds are not refreshed until the warm up has finished
+      boundsDirty = false;
+      return false;
+    }
+    preCalculated = true;
+    preCalculateRemaining = -1;
+    return true;
+  }
+
+  /**
+   * Brings an emitter that was suspended off screen back up to date. Particles only live so long, so only the
+   * last stretch of the suspended time needs to be simulated, the rest just advances the emitter's duration.
+   */
+  private void catchUp(float time, ForkJoinPool splitPool) {
+    float window = getSteadyStateTime();
+    if (time > window) {
+      // everything alive now would have died before the window starts
+      killAllParticles();
+      currentDuration += time - window;
+      if (looping && duration > 0) {
+        currentDuration %= duration;
+      }
+      time = window;
+    }
+    fastForward(time, 0, splitPool);
+  }
+
+  /**
+   * Simulates the time in coarse steps without building meshes or refreshing bounds
+   *
+   * @param time The time to simulate
+   * @param deadline System.nanoTime() to stop at, or 0 to simulate all of the time
+   * @return The time that is left to simulate
+   */
+  private float fastForward(float time, long deadline, ForkJoinPool splitPool) {
+    float stepSize = preCalculateStep > 0 ? preCalculateStep : 0.1f;
+    while (time > 0) {
+      float t = Math.min(stepSize, time);
+      step(t, true, splitPool);
+      time -= t;
+      if (deadline != 0 && System.nanoTime() >= deadline) {
+        break;
+      }
+    }
+    return time;
+  }
+
+  /**
+   * Returns how long the emitter needs to run until it looks the same as if it had always been running, the
+   * longer of the duration and the maximum particle life
+   */
+  private float getSteadyStateTime() {
+    return Math.max(duration, Math.max(lifeMax.getValue(0, 1f, random), lifeMax.getValue(1, 1f, random)));
+  }
+
+  /**
+   * Stops simulating the emitter once it has not been rendered by any viewport for a while. When it is
+   * rendered again the emitter catches up on the time it missed with a coarse fast forward.
+   *
+   * @param cullOffscreen true to suspend emitters that are off screen
+   */
+  public void setCullOffscreen(boolean cullOffscreen) {
+    this.cullOffscreen = cullOffscreen;
+    if (!cullOffscreen) {
+      offscreenTime = 0;
+    }
+  }
+
+  public boolean isCullOffscreen() {
+    return cullOffscreen;
+  }
+
+  /**
+   * Sets how long an emitter has to be off screen before its simulation is suspended
+   *
+   * @param offscreenDelay The time in seconds
+   */
+  public void setOffscreenDelay(float offscreenDelay) {
+    this.offscreenDelay = offscreenDelay;
+  }
+
+  public float getOffscreenDelay() {
+    return offscreenDelay;
+  }
+
+  /**
+   * Checks if the simulation is suspended because the emitter is off screen
+   *
+   * @return true while the simulation is suspended
+   */
+  public boolean isSuspended() {
+    return cullOffscreen && offscreenTime > offscreenDelay;
+  }
+
+  /**
+   * Checks if the emitter has finished and is skipping its updates and mesh building. Dormant emitters wake
+   * up when they are reset, emit a particle or their duration or looping is changed.
+   *
+   * @return true if the emitter is dormant
+   */
+  public boolean isDormant() {
+    return dormant;
+  }
+
+  private void wake() {
+    dormant = false;
+    dormantMeshBuilt = false;
+  }
+
+  public void addEmitterListener(EmitterListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeEmitterListener(EmitterListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Advances the emission and the particles by a single step
+   *
+   * @param catchingUp true if the step stands in for several frames and should emit once for every interval it
+   * covers, otherwise the step emits at most once like a normal frame
+   */
+  private void step(float tpf, boolean catchingUp, ForkJoinPool splitPool) {
     //long t = System.currentTimeMillis();
     if (enabled) {
+      boundsDirty = true;
+      particleExtents.clear();
       currentDuration += tpf;
 
       if (currentDuration > duration && looping) {
@@ -655,36 +1359,406 @@ public class Emitter extends Node {
       }
 
       //if (delay <= 0.0f ) {
-        for (ParticleData p : particles) {
-          if (p.active) {
-            p.update(tpf);
-          }
-        }
+        updateParticles(tpf, splitPool);
 
         currentInterval += tpf;
 
         if (currentDuration <= duration) {
-          // check for particle emission
-          if (currentInterval >= targetInterval) {
+          // check for particle emission, when catching up once for every interval the step covered
+          int maxEmissions = catchingUp ? maxEmissionsPerStep : 1;
+          int emissions = 0;
+          while (currentInterval >= targetInterval && emissions < maxEmissions) {
             totalParticlesThisEmission = calcParticlesPerEmission();
-            for (int i = 0; i < totalParticlesThisEmission; i++) {
-              emitNextParticle();
+            if (currentLodLevel != null && currentLodLevel.getEmissionScale() != 1.0f) {
+              // carry the fraction over so small emissions are thinned out instead of dropped
+              lodEmissionRemainder += totalParticlesThisEmission * currentLodLevel.getEmissionScale();
+              totalParticlesThisEmission = (int) lodEmissionRemainder;
+              lodEmissionRemainder -= totalParticlesThisEmission;
             }
+            emitBurst(totalParticlesThisEmission);
             currentInterval -= targetInterval;
+            emissions++;
+          }
+          if (catchingUp && currentInterval >= targetInterval) {
+            // too far behind, drop the backlog like the fixed time step does
+            currentInterval %= targetInterval;
           }
 
           // run any sort of influencer updates we may need
-          for (ParticleInfluencer influencer : influencerMap.values()) {
+          for (ParticleInfluencer influencer : influencers) {
             influencer.updateGlobal(tpf);
           }
 
+        } else if (!looping && !dormant && activeParticleCount == 0) {
+          // finished, stop updating until something wakes the emitter up again
+          dormant = true;
+          finishedPending = true;
         }
 
-        updateModelBound();
+        // the mesh holds this step's particles if they were written while updating
+        verticesWritten = writingVertices;
+        writingVertices = false;
     }
     //System.out.println("Output: " + (System.currentTimeMillis() - t));
   }
 
+  private void updateParticles(float tpf, ForkJoinPool splitPool) {
+    int end = packParticles ? activeParticleCount : maxParticles;
+    if ((parallelUpdate || splitPool != null) && end > parallelChunkSize) {
+      ForkJoinPool pool = splitPool != null ? splitPool : updatePool;
+      updateParticlesParallel(tpf, end, pool != null ? pool : ForkJoinPool.commonPool());
+      return;
+    }
+    vertexWriter = mesh instanceof ParticleVertexWriter ? (ParticleVertexWriter) mesh : null;
+    writingVertices = writeDuringUpdate && fixedTimeStep <= 0 && vertexWriter != null
+        && vertexWriter.canWriteDuringUpdate() && (storage == null || mesh.supportsParticleStorage());
+
+    // age every particle first and reset the ones that died, from the end so packed particles only move into
+    // slots that were already aged
+    for (int i = end - 1; i >= 0; i--) {
+      if (storage != null ? storage.active[i] && !storage.updateLife(i, tpf)
+          : particles[i].active && !particles[i].updateLife(tpf)) {
+        killParticle(i);
+      }
+    }
+
+    // then let each influencer process all of the live particles in a single pass
+    end = packParticles ? activeParticleCount : maxParticles;
+    boolean skipExpensive = isSkippingExpensiveInfluencers();
+    for (ParticleInfluencer influencer : influencers) {
+      if (!skipExpensive || !influencer.isExpensive()) {
+        runInfluencer(influencer, 0, end, tpf);
+      }
+    }
+    integrateParticles(0, end, tpf, particleExtents);
+  }
+
+  private void runInfluencer(ParticleInfluencer influencer, int start, int end, float tpf) {
+    if (storage != null) {
+      influencer.update(storage, start, end, tpf);
+    } else {
+      influencer.update(particles, start, end, tpf);
+    }
+  }
+
+  /**
+   * Moves the particles in the range along their velocity and gathers their extents for the emitter's bounds.
+   * The start of the step is included as well since rendering may interpolate between the two.
+   *
+   * @param extents The extents to grow, the emitter's own or those of a parallel update task
+   */
+  private void integrateParticles(int start, int end, float tpf, ParticleExtents extents) {
+    if (storage != null) {
+      boolean[] active = storage.active;
+      float[] position = storage.position;
+      float[] previous = storage.previousPosition;
+      float[] size = storage.size;
+      for (int i = start; i < end; i++) {
+        if (active[i]) {
+          storage.integrate(i, tpf);
+          int v = i * 3;
+          extents.include(position[v], position[v + 1], position[v + 2]);
+          extents.include(previous[v], previous[v + 1], previous[v + 2]);
+          extents.includeSize(size[i]);
+          if (writingVertices) {
+            vertexWriter.writeParticle(i, storage);
+          }
+        } else if (writingVertices) {
+          vertexWriter.writeEmptyParticle(i);
+        }
+      }
+    } else {
+      for (int i = start; i < end; i++) {
+        ParticleData p = particles[i];
+        if (p.active) {
+          p.integrate(tpf);
+          extents.include(p.position.x, p.position.y, p.position.z);
+          extents.include(p.previousPosition.x, p.previousPosition.y, p.previousPosition.z);
+          extents.includeSize(p.size);
+          if (writingVertices) {
+            vertexWriter.writeParticle(i, p);
+          }
+        } else if (writingVertices) {
+          vertexWriter.writeEmptyParticle(i);
+        }
+      }
+    }
+  }
+
+  private void includeParticle(int index) {
+    if (storage != null) {
+      int v = index * 3;
+      particleExtents.include(storage.position[v], storage.position[v + 1], storage.position[v + 2]);
+      particleExtents.includeSize(storage.size[index]);
+    } else {
+      ParticleData p = particles[index];
+      particleExtents.include(p.position.x, p.position.y, p.position.z);
+      particleExtents.includeSize(p.size);
+    }
+  }
+
+  /**
+   * Runs the thread safe influencers on the update pool, then resets the particles that died and runs the
+   * remaining influencers on this thread.
+   */
+  private void updateParticlesParallel(float tpf, int end, ForkJoinPool pool) {
+    int safeCount = 0;
+    int unsafeCount = 0;
+    if (threadSafeInfluencers.length < influencers.length) {
+      threadSafeInfluencers = new ParticleInfluencer[influencers.length];
+      serialInfluencers = new ParticleInfluencer[influencers.length];
+    }
+    boolean skipExpensive = isSkippingExpensiveInfluencers();
+    for (ParticleInfluencer influencer : influencers) {
+      if (skipExpensive && influencer.isExpensive()) {
+        continue;
+      }
+      if (influencer.isThreadSafe()) {
+        threadSafeInfluencers[safeCount++] = influencer;
+      } else {
+        serialInfluencers[unsafeCount++] = influencer;
+      }
+    }
+    threadSafeInfluencerCount = safeCount;
+    if (expiredParticles.length < end) {
+      expiredParticles = new boolean[maxParticles];
+    }
+
+    // influencers read the world transform, refresh it before other threads can see it
+    getWorldTransform();
+
+    ParticleUpdateTask task = new ParticleUpdateTask(this, 0, end, tpf, unsafeCount == 0);
+    if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+      // already running on a worker of the pool, split the work in place so idle workers can steal it
+      task.invoke();
+    } else {
+      pool.invoke(task);
+    }
+    if (unsafeCount == 0) {
+      // the tasks merged their ranges' extents as they joined
+      particleExtents.merge(task.getExtents());
+    }
+
+    // reset the particles that died, from the end so packed particles only move into updated slots
+    for (int i = end - 1; i >= 0; i--) {
+      if (expiredParticles[i]) {
+        expiredParticles[i] = false;
+        // active again so the reset frees the slot
+        if (storage != null) {
+          storage.active[i] = true;
+        } else {
+          particles[i].active = true;
+        }
+        killParticle(i);
+      }
+    }
+
+    if (unsafeCount == 0) {
+      return;
+    }
+    end = packParticles ? activeParticleCount : maxParticles;
+    for (int j = 0; j < unsafeCount; j++) {
+      runInfluencer(serialInfluencers[j], 0, end, tpf);
+    }
+    integrateParticles(0, end, tpf, particleExtents);
+  }
+
+  /**
+   * Ages the active particles in the given range and runs the thread safe influencers on them. Particles that
+   * reach the end of their life are marked inactive so the influencers and the bounds skip them, the emitter
+   * resets them once every range is done. Called from the update pool.
+   *
+   * @param extents The extents of the calling task to integrate the range into, or null to leave the
+   * integration to the update thread
+   */
+  void updateParticleRange(int start, int end, float tpf, ParticleExtents extents) {
+    boolean[] expired = expiredParticles;
+    if (storage != null) {
+      boolean[] active = storage.active;
+      for (int i = start; i < end; i++) {
+        if (active[i] && !storage.updateLife(i, tpf)) {
+          active[i] = false;
+          expired[i] = true;
+        }
+      }
+    } else {
+      for (int i = start; i < end; i++) {
+        ParticleData p = particles[i];
+        if (p.active && !p.updateLife(tpf)) {
+          p.active = false;
+          expired[i] = true;
+        }
+      }
+    }
+
+    ParticleInfluencer[] influencers = threadSafeInfluencers;
+    int count = threadSafeInfluencerCount;
+    for (int j = 0; j < count; j++) {
+      runInfluencer(influencers[j], start, end, tpf);
+    }
+    if (extents != null) {
+      integrateParticles(start, end, tpf, extents);
+    }
+  }
+
+
+  /**
+   * Splits the particle update across the threads of a ForkJoinPool. Influencers that are not thread safe
+   * (see ParticleInfluencer.isThreadSafe()) run afterwards on the update thread, so they see the particles
+   * after the thread safe influencers have been applied.
+   *
+   * @param parallelUpdate true to update particles in parallel
+   */
+  public void setParallelUpdate(boolean parallelUpdate) {
+    this.parallelUpdate = parallelUpdate;
+  }
+
+  public boolean isParallelUpdate() {
+    return parallelUpdate;
+  }
+
+  /**
+   * Sets the number of particles updated by a single task. Emitters with fewer active particles than this are
+   * updated serially.
+   *
+   * @param parallelChunkSize The particles per task, must be at least 1
+   */
+  public void setParallelChunkSize(int parallelChunkSize) {
+    if (parallelChunkSize > 0) {
+      this.parallelChunkSize = parallelChunkSize;
+    }
+  }
+
+  public int getParallelChunkSize() {
+    return parallelChunkSize;
+  }
+
+  /**
+   * Sets the pool used for parallel updates
+   *
+   * @param updatePool The pool to use or null to use the common pool
+   */
+  public void setUpdatePool(ForkJoinPool updatePool) {
+    this.updatePool = updatePool;
+  }
+
+  public ForkJoinPool getUpdatePool() {
+    return updatePool;
+  }
+
+  /**
+   * Simulates the emitter at a fixed rate, independent of the frame rate. Frames are split into as many steps
+   * as fit the elapsed time and the meshes interpolate particle positions between the last two steps.
+   * ParticleDataTrails is the exception, trail points are drawn where they were recorded during the steps.
+   *
+   * @param fixedTimeStep The length of a simulation step in seconds, or 0 to simulate with the frame time
+   */
+  public void setFixedTimeStep(float fixedTimeStep) {
+    this.fixedTimeStep = Math.max(0, fixedTimeStep);
+    this.stepAccumulator = 0;
+    this.interpolation = 1;
+  }
+
+  public float getFixedTimeStep() {
+    return fixedTimeStep;
+  }
+
+  /**
+   * Sets the most simulation steps run in a single frame when using a fixed time step. Time beyond that is
+   * dropped so a long frame can't cause a spiral of ever longer updates.
+   *
+   * @param maxSubSteps The maximum number of steps per frame
+   */
+  public void setMaxSubSteps(int maxSubSteps) {
+    this.maxSubSteps = Math.max(1, maxSubSteps);
+  }
+
+  public int getMaxSubSteps() {
+    return maxSubSteps;
+  }
+
+  /**
+   * Returns how far the frame time has advanced past the last simulation step, as a fraction of the fixed
+   * time step. Always 1 when the emitter simulates with the frame time.
+   *
+   * @return The interpolation between the previous and the current particle positions
+   */
+  public float getInterpolation() {
+    return interpolation;
+  }
+
+  /**
+   * Adds a simulation level of detail. The emitter uses the level with the largest distance that is still
+   * closer than the camera rendering it and updates at full detail when the camera is closer than every level.
+   *
+   * @param level The level of detail to add
+   */
+  public void addLodLevel(EmitterLodLevel level) {
+    lodLevels.add(level);
+    sortLodLevels();
+  }
+
+  public void removeLodLevel(EmitterLodLevel level) {
+    lodLevels.remove(level);
+    if (currentLodLevel == level) {
+      setCurrentLodLevel(null);
+    }
+  }
+
+  public void clearLodLevels() {
+    lodLevels.clear();
+    setCurrentLodLevel(null);
+  }
+
+  public List<EmitterLodLevel> getLodLevels() {
+    return lodLevels;
+  }
+
+  /**
+   * Returns the level of detail picked the last time the emitter was rendered
+   *
+   * @return The current level or null when updating at full detail
+   */
+  public EmitterLodLevel getCurrentLodLevel() {
+    return currentLodLevel;
+  }
+
+  /**
+   * Checks if influencers flagged as expensive are skipped at the current level of detail
+   *
+   * @return true if expensive influencers are skipped
+   */
+  public boolean isSkippingExpensiveInfluencers() {
+    return currentLodLevel != null && currentLodLevel.isSkipExpensiveInfluencers();
+  }
+
+  private void sortLodLevels() {
+    lodLevels.sort((a, b) -> Float.compare(a.getDistance(), b.getDistance()));
+  }
+
+  void updateLodLevel(Camera cam) {
+    if (lodLevels.isEmpty()) {
+      return;
+    }
+    Vector3f center = getWorldBound() != null ? getWorldBound().getCenter() : getWorldTranslation();
+    float distanceSquared = cam.getLocation().distanceSquared(center);
+    EmitterLodLevel level = null;
+    for (EmitterLodLevel lod : lodLevels) {
+      if (distanceSquared < lod.getDistance() * lod.getDistance()) {
+        break;
+      }
+      level = lod;
+    }
+    setCurrentLodLevel(level);
+  }
+
+  private void setCurrentLodLevel(EmitterLodLevel level) {
+    if (currentLodLevel != level) {
+      currentLodLevel = level;
+      lodEmissionRemainder = 0;
+    }
+  }
+
   private int calcParticlesPerEmission() {
     if (particlesPerEmission == 0) {
       return 0;
@@ -699,20 +1773,95 @@ public class Emitter extends Node {
    * Emits the next available (non-active) particle
    */
   public void emitNextParticle() {
-    if (nextIndex != -1 && nextIndex < maxParticles) {
-      particles[nextIndex].initialize(lifeMin, lifeMax);
-      particles[nextIndex].startlife =
-          (lifeMax.getValue(0, particles[nextIndex].randomValue) - lifeMin.getValue(0, particles[nextIndex].randomValue)) * FastMath.nextRandomFloat()
-              + lifeMin.getValue(0, particles[nextIndex].randomValue);
-      int searchIndex = nextIndex;
-      while (particles[searchIndex].active) {
-        searchIndex++;
-        if (searchIndex > particles.length - 1) {
-          searchIndex = -1;
-          break;
-        }
+    if (getFreeParticleCount() > 0) {
+      int index = nextFreeParticle();
+      if (storage != null) {
+        storage.initialize(index, lifeMin, lifeMax);
+      } else {
+        particles[index].initialize(lifeMin, lifeMax);
+      }
+      finishEmit(index);
+    }
+  }
+
+  /**
+   * Emits up to count particles at once. The emission points are picked from the shape in one go, see
+   * EmitterShape.sample(), and the particles are then set up in a single loop.
+   *
+   * @param count The number of particles to emit
+   * @return The number of particles emitted, less than count when the emitter runs out of particles
+   */
+  public int emitBurst(int count) {
+    count = Math.min(count, getFreeParticleCount());
+    if (count <= 0) {
+      return 0;
+    }
+    if (useRandomEmissionPoint) {
+      // the random offset is read from the shape right after each point is picked
+      for (int i = 0; i < count; i++) {
+        emitNextParticle();
+      }
+      return count;
+    }
+
+    if (burstIndexes.length < count) {
+      burstPositions = new float[count * 3];
+      burstDirections = new float[count * 3];
+      burstIndexes = new int[count];
+    }
+    emitterShape.sample(count, burstPositions, burstDirections, burstIndexes);
+    for (int i = 0, v = 0; i < count; i++, v += 3) {
+      burstPosition.set(burstPositions[v], burstPositions[v + 1], burstPositions[v + 2]);
+      burstDirection.set(burstDirections[v], burstDirections[v + 1], burstDirections[v + 2]);
+      int index = nextFreeParticle();
+      if (storage != null) {
+        storage.initialize(index, lifeMin, lifeMax, burstPosition, burstDirection, burstIndexes[i]);
+      } else {
+        particles[index].initialize(lifeMin, lifeMax, burstPosition, burstDirection, burstIndexes[i]);
+      }
+      finishEmit(index);
+    }
+    return count;
+  }
+
+  /**
+   * Returns how many more particles can be emitted right now
+   *
+   * @return The number of inactive particles
+   */
+  public int getFreeParticleCount() {
+    if (storage == null && particles == null) {
+      return 0;
+    }
+    return packParticles ? maxParticles - activeParticleCount : freeParticleCount;
+  }
+
+  private int nextFreeParticle() {
+    return packParticles ? activeParticleCount : freeParticles[--freeParticleCount];
+  }
+
+  /**
+   * Completes the emission of a freshly initialized particle
+   */
+  private void finishEmit(int index) {
+    if (storage != null) {
+      float randomValue = storage.randomValue[index];
+      storage.startLife[index] =
+          (lifeMax.getValue(0, randomValue, random) - lifeMin.getValue(0, randomValue, random)) * random.nextFloat()
+              + lifeMin.getValue(0, randomValue, random);
+    } else {
+      particles[index].startlife =
+          (lifeMax.getValue(0, particles[index].randomValue, random) - lifeMin.getValue(0, particles[index].randomValue, random)) * random.nextFloat()
+              + lifeMin.getValue(0, particles[index].randomValue, random);
+    }
+    includeParticle(index);
+    boundsDirty = true;
+    if (writingVertices) {
+      if (storage != null) {
+        vertexWriter.writeParticle(index, storage);
+      } else {
+        vertexWriter.writeParticle(index, particles[index]);
       }
-      nextIndex = searchIndex;
     }
   }
 
@@ -720,24 +1869,158 @@ public class Emitter extends Node {
    * Emits all non-active particles
    */
   public void emitAllParticles() {
-    for (ParticleData p : particles) {
-      if (!p.active) {
-        p.initialize(lifeMin, lifeMax);
+    if (storage != null) {
+      for (int i = 0; i < maxParticles; i++) {
+        if (!storage.active[i]) {
+          storage.initialize(i, lifeMin, lifeMax);
+          includeParticle(i);
+        }
+      }
+    } else {
+      for (ParticleData p : particles) {
+        if (!p.active) {
+          p.initialize(lifeMin, lifeMax);
+          includeParticle(p.index);
+        }
       }
     }
+    freeParticleCount = 0;
+    boundsDirty = true;
   }
 
   /**
-   * Deactivates and resets the specified particle
+   * Deactivates and resets the specified particle. The particle is found through it's index, particles that
+   * do not belong to this emitter are ignored. In storage mode this kills the slot of a particle returned by
+   * ParticleStorage.load().
    *
    * @param p The particle to reset
    */
   public void killParticle(ParticleData p) {
-    for (ParticleData particle : particles) {
-      if (particle == p) {
-        p.reset();
+    if (p.emitter != this || p.index < 0 || p.index >= maxParticles) {
+      return;
+    }
+    if (storage != null) {
+      if (storage.active[p.index]) {
+        storage.reset(p.index);
+      }
+    } else if (particles != null && particles[p.index] == p) {
+      p.reset();
+    }
+  }
+
+  /**
+   * Deactivates and resets every active particle
+   *
+   * @return The number of particles killed
+   */
+  public int killAllParticles() {
+    return killParticles(p -> true);
+  }
+
+  /**
+   * Deactivates and resets every active particle the filter accepts. In storage mode the filter is passed a
+   * shared particle loaded from the storage slot, it must not keep a reference to it.
+   *
+   * @param filter Returns true for the particles to kill
+   * @return The number of particles killed
+   */
+  public int killParticles(Predicate<ParticleData> filter) {
+    int killed = 0;
+    // go backwards, packing only moves already visited particles into the freed slot. Stop once every active
+    // particle was seen, unpacked particles may be spread over the whole array.
+    int remaining = activeParticleCount;
+    for (int i = getParticleEnd() - 1; i >= 0 && remaining > 0; i--) {
+      if (storage != null) {
+        if (storage.active[i]) {
+          remaining--;
+          if (filter.test(storage.load(i))) {
+            storage.reset(i);
+            killed++;
+          }
+        }
+      } else if (particles[i].active) {
+        remaining--;
+        if (filter.test(particles[i])) {
+          particles[i].reset();
+          killed++;
+        }
+      }
+    }
+    return killed;
+  }
+
+  /**
+   * Deactivates and resets every active particle that is inside of the volume. The particle positions are
+   * tested as they are, in world space unless the particles follow the emitter.
+   *
+   * @param volume The region to clear
+   * @return The number of particles killed
+   */
+  public int killParticles(BoundingVolume volume) {
+    int killed = 0;
+    Vector3f position = new Vector3f();
+    int remaining = activeParticleCount;
+    for (int i = getParticleEnd() - 1; i >= 0 && remaining > 0; i--) {
+      if (storage != null) {
+        if (!storage.active[i]) {
+          continue;
+        }
+        remaining--;
+        int v = i * 3;
+        position.set(storage.position[v], storage.position[v + 1], storage.position[v + 2]);
+        if (volume.contains(position)) {
+          storage.reset(i);
+          killed++;
+        }
+      } else if (particles[i].active) {
+        remaining--;
+        if (volume.contains(particles[i].position)) {
+          particles[i].reset();
+          killed++;
+        }
       }
     }
+    return killed;
+  }
+
+  /**
+   * Passes every active particle to the action. With packed particles only the live slots are visited. The
+   * action may kill the particle it was passed. In storage mode the action is passed a shared particle loaded
+   * from the storage slot, changes to it are written back afterwards.
+   *
+   * @param action The action to run for each active particle
+   */
+  public void forEachParticle(Consumer<ParticleData> action) {
+    // stop once every active particle was visited, see killParticles
+    int remaining = activeParticleCount;
+    for (int i = getParticleEnd() - 1; i >= 0 && remaining > 0; i--) {
+      if (storage != null) {
+        if (storage.active[i]) {
+          remaining--;
+          ParticleData p = storage.load(i);
+          action.accept(p);
+          if (p.active && p.index == i) {
+            storage.store(i, p);
+          }
+        }
+      } else if (particles[i].active) {
+        remaining--;
+        action.accept(particles[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns one past the last slot that may hold an active particle. With packed particles the active
+   * particles are the first getActiveParticleCount() slots.
+   *
+   * @return The end of the particle slots to scan
+   */
+  public int getParticleEnd() {
+    if (storage == null && particles == null) {
+      return 0;
+    }
+    return packParticles ? activeParticleCount : maxParticles;
   }
 
   public int getActiveParticleCount() {
@@ -746,6 +2029,8 @@ public class Emitter extends Node {
 
   public void incActiveParticleCount() {
     activeParticleCount++;
+    verticesWritten = false;
+    wake();
   }
 
   public void decActiveParticleCount() {
@@ -758,22 +2043,59 @@ public class Emitter extends Node {
    * @param index The index of the particle to reset
    */
   public void killParticle(int index) {
-    particles[index].reset();
+    if (storage != null) {
+      storage.reset(index);
+    } else {
+      particles[index].reset();
+    }
   }
 
   /**
-   * This method should not be called. Particles call this method to help track
-   * the next available particle index
+   * This method should not be called. Particles call this method to return
+   * their index to the pool of available particles once they are reset
    *
    * @param index The index of the particle that was just reset
    */
-  public void setNextIndex(int index) {
-    if (index < nextIndex || nextIndex == -1) {
-      nextIndex = index;
+  public void freeParticle(int index) {
+    verticesWritten = false;
+    if (packParticles) {
+      // move the last active particle into the freed slot
+      swapParticles(index, activeParticleCount);
+    } else if (freeParticleCount < freeParticles.length) {
+      freeParticles[freeParticleCount++] = index;
+    }
+  }
+
+  private void swapParticles(int a, int b) {
+    if (a == b) {
+      return;
+    }
+    attributes.swap(a, b);
+    if (storage != null) {
+      storage.swap(a, b);
+    } else {
+      ParticleData p = particles[a];
+      particles[a] = particles[b];
+      particles[b] = p;
+      particles[a].index = a;
+      particles[b].index = b;
     }
   }
 
   public void renderEmitter(RenderManager rm, ViewPort vp) {
+    // only called for viewports that can see the emitter
+    offscreenTime = 0;
+    if (dormant) {
+      // build the empty meshes once after the last particle died
+      if (dormantMeshBuilt) {
+        return;
+      }
+      dormantMeshBuilt = true;
+    }
+    if (isPreCalculating()) {
+      // keep showing the empty meshes until the warm up has finished
+      return;
+    }
     Camera cam = vp.getCamera();
 
     if (mesh.getClass() == ParticleDataPointMesh.class) {
@@ -784,13 +2106,22 @@ public class Emitter extends Node {
       material.setFloat("Quadratic", C);
     }
 
+    updateLodLevel(cam);
+
     Matrix3f inverseRotation = Matrix3f.IDENTITY;
 
     for (Spatial s : this.getChildren()) {
       if (s instanceof Geometry) {
         Geometry g = (Geometry)s;
         if (g.getMesh() instanceof ParticleDataMesh) {
-          ((ParticleDataMesh)g.getMesh()).updateParticleData(particles, cam, inverseRotation);
+          ParticleDataMesh pdm = (ParticleDataMesh)g.getMesh();
+          if (pdm == mesh && verticesWritten) {
+            ((ParticleVertexWriter) pdm).finishUpdateWrites();
+          } else if (storage != null && pdm.supportsParticleStorage()) {
+            pdm.updateParticleData(storage, cam, inverseRotation);
+          } else if (particles != null) {
+            pdm.updateParticleData(particles, cam, inverseRotation);
+          }
         }
       }
     }
@@ -809,6 +2140,7 @@ public class Emitter extends Node {
     oc.write(currentInterval, "currentInterval", 0f);
     oc.write(emissionsPerSecond, "emissionsPerSecond", 20);
     oc.write(particlesPerEmission, "particlesPerEmission", 0);
+    oc.write(maxEmissionsPerStep, "maxEmissionsPerStep", 64);
     oc.write(useStaticParticles, "useStaticParticles", false);
     oc.write(useRandomEmissionPoint, "useRandomEmissionPoint", false);
     oc.write(material, "material", null);
@@ -823,6 +2155,21 @@ public class Emitter extends Node {
     oc.write(duration, "duration", 5.0f);
     oc.write(looping, "looping", true);
     oc.write(preCalculate, "preCalculate", false);
+    oc.write(preCalculateTime, "preCalculateTime", 0);
+    oc.write(preCalculateStep, "preCalculateStep", 0.1f);
+    oc.write(preCalculateBudget, "preCalculateBudget", 0);
+    oc.writeSavableArrayList(lodLevels, "lodLevels", null);
+    oc.write(cullOffscreen, "cullOffscreen", false);
+    oc.write(offscreenDelay, "offscreenDelay", 1.0f);
+    oc.write(useParticleStorage, "useParticleStorage", false);
+    oc.write(packParticles, "packParticles", false);
+    oc.write(writeDuringUpdate, "writeDuringUpdate", false);
+    oc.write(useRandomSeed, "useRandomSeed", false);
+    oc.write(randomSeed, "randomSeed", 0);
+    oc.write(parallelUpdate, "parallelUpdate", false);
+    oc.write(parallelChunkSize, "parallelChunkSize", 2048);
+    oc.write(fixedTimeStep, "fixedTimeStep", 0);
+    oc.write(maxSubSteps, "maxSubSteps", 4);
     oc.write(enabled, "enabled", false);
     oc.write(emitterShape, "emitterShape", null);
     oc.write(templateMesh, "templateMesh", null);
@@ -837,11 +2184,13 @@ public class Emitter extends Node {
     InputCapsule ic = im.getCapsule(this);
     name = ic.readString("name", null);
     influencerMap = (Map<String, ParticleInfluencer>) ic.readStringSavableMap("influencers", new HashMap());
+    refreshInfluencers();
     maxParticles = ic.readInt("maxParticles", 30);
     targetInterval = ic.readFloat("targetInterval", .00015f);
     currentInterval = ic.readFloat("currentInterval", 0f);
     emissionsPerSecond = ic.readInt("emissionsPerSecond", 20);
     particlesPerEmission = ic.readInt("particlesPerEmission", 0);
+    maxEmissionsPerStep = ic.readInt("maxEmissionsPerStep", 64);
     useStaticParticles = ic.readBoolean("useStaticParticles", false);
     useRandomEmissionPoint = ic.readBoolean("useRandomEmissionPoint", false);
     material = (Material) ic.readSavable("material", null);
@@ -856,6 +2205,28 @@ public class Emitter extends Node {
     duration = ic.readFloat("duration", 5.0f);
     looping = ic.readBoolean("looping", true);
     preCalculate = ic.readBoolean("preCalculate", false);
+    preCalculateTime = ic.readFloat("preCalculateTime", 0);
+    preCalculateStep = ic.readFloat("preCalculateStep", 0.1f);
+    preCalculateBudget = ic.readFloat("preCalculateBudget", 0);
+    @SuppressWarnings("unchecked")
+    ArrayList<EmitterLodLevel> savedLodLevels =
+        (ArrayList<EmitterLodLevel>) ic.readSavableArrayList("lodLevels", new ArrayList<EmitterLodLevel>());
+    lodLevels = savedLodLevels;
+    sortLodLevels();
+    cullOffscreen = ic.readBoolean("cullOffscreen", false);
+    offscreenDelay = ic.readFloat("offscreenDelay", 1.0f);
+    useParticleStorage = ic.readBoolean("useParticleStorage", false);
+    packParticles = ic.readBoolean("packParticles", false);
+    writeDuringUpdate = ic.readBoolean("writeDuringUpdate", false);
+    useRandomSeed = ic.readBoolean("useRandomSeed", false);
+    randomSeed = ic.readLong("randomSeed", 0);
+    if (useRandomSeed) {
+      applyRandomSeed();
+    }
+    parallelUpdate = ic.readBoolean("parallelUpdate", false);
+    parallelChunkSize = ic.readInt("parallelChunkSize", 2048);
+    fixedTimeStep = ic.readFloat("fixedTimeStep", 0);
+    maxSubSteps = ic.readInt("maxSubSteps", 4);
     enabled = ic.readBoolean("enabled", false);
     emitterShape = (EmitterShape) ic.readSavable("emitterShape", new EmitterSphere());
     templateMesh = (Mesh) ic.readSavable("templateMesh", null);
@@ -50,6 +50,8 @@ import java.io.IOException;
 public class EmitterControl implements Control, Cloneable {
 
   private Emitter emitter;
+  // set when a ParticleSystemState updates the emitter instead of this control
+  private boolean managed = false;
 
   public EmitterControl() {
 
@@ -59,6 +61,8 @@ public class EmitterControl implements Control, Cloneable {
   public Control cloneForSpatial(Spatial spatial) {
     try {
       EmitterControl clone = (EmitterControl)super.clone();
+      // the clone is not registered with any particle system state
+      clone.managed = false;
       return clone;
     } catch (CloneNotSupportedException e) {
       throw new AssertionError();
@@ -82,7 +86,22 @@ public class EmitterControl implements Control, Cloneable {
 
   @Override
   public void update(float tpf) {
-    emitter.updateEmitter(tpf);
+    if (!managed) {
+      emitter.updateEmitter(tpf);
+    }
+  }
+
+  /**
+   * Marks the emitter as updated by a ParticleSystemState. Managed controls only render the emitter.
+   *
+   * @param managed true if something else is updating the emitter
+   */
+  public void setManaged(boolean managed) {
+    this.managed = managed;
+  }
+
+  public boolean isManaged() {
+    return managed;
   }
 
   @Override
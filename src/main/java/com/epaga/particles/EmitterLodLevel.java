@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles;
+
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.export.Savable;
+
+import java.io.IOException;
+
+/**
+ * EmitterLodLevel
+ * A simulation level of detail for an emitter. The emitter switches to the level once the camera is at least
+ * the level's distance away, and then only updates every few frames, emits fewer particles and can skip the
+ * influencers flagged as expensive.
+ *
+ * @author Jeddic
+ */
+public class EmitterLodLevel implements Savable, Cloneable {
+
+  private float distance = 50.0f;
+  private int updateInterval = 1;
+  private float emissionScale = 1.0f;
+  private boolean skipExpensiveInfluencers = false;
+
+  public EmitterLodLevel() {
+
+  }
+
+  /**
+   * Creates a new level of detail
+   *
+   * @param distance The camera distance the level starts at
+   * @param updateInterval The emitter is updated every updateInterval frames with the accumulated time
+   * @param emissionScale Multiplier for the number of particles emitted
+   * @param skipExpensiveInfluencers true to skip influencers that report isExpensive()
+   */
+  public EmitterLodLevel(float distance, int updateInterval, float emissionScale, boolean skipExpensiveInfluencers) {
+    this.distance = distance;
+    this.updateInterval = Math.max(1, updateInterval);
+    this.emissionScale = emissionScale;
+    this.skipExpensiveInfluencers = skipExpensiveInfluencers;
+  }
+
+  public float getDistance() {
+    return distance;
+  }
+
+  public void setDistance(float distance) {
+    this.distance = distance;
+  }
+
+  public int getUpdateInterval() {
+    return updateInterval;
+  }
+
+  /**
+   * Sets how many frames pass between updates, the skipped frame times are added to the next update
+   *
+   * @param updateInterval The number of frames, 1 updates every frame
+   */
+  public void setUpdateInterval(int updateInterval) {
+    this.updateInterval = Math.max(1, updateInterval);
+  }
+
+  public float getEmissionScale() {
+    return emissionScale;
+  }
+
+  /**
+   * Sets the multiplier for the number of particles emitted while the level is active
+   *
+   * @param emissionScale The multiplier, 0 to 1
+   */
+  public void setEmissionScale(float emissionScale) {
+    this.emissionScale = emissionScale;
+  }
+
+  public boolean isSkipExpensiveInfluencers() {
+    return skipExpensiveInfluencers;
+  }
+
+  public void setSkipExpensiveInfluencers(boolean skipExpensiveInfluencers) {
+    this.skipExpensiveInfluencers = skipExpensiveInfluencers;
+  }
+
+  @Override
+  public void write(JmeExporter ex) throws IOException {
+    OutputCapsule oc = ex.getCapsule(this);
+    oc.write(distance, "distance", 50.0f);
+    oc.write(updateInterval, "updateInterval", 1);
+    oc.write(emissionScale, "emissionScale", 1.0f);
+    oc.write(skipExpensiveInfluencers, "skipExpensiveInfluencers", false);
+  }
+
+  @Override
+  public void read(JmeImporter im) throws IOException {
+    InputCapsule ic = im.getCapsule(this);
+    distance = ic.readFloat("distance", 50.0f);
+    updateInterval = ic.readInt("updateInterval", 1);
+    emissionScale = ic.readFloat("emissionScale", 1.0f);
+    skipExpensiveInfluencers = ic.readBoolean("skipExpensiveInfluencers", false);
+  }
+
+  @Override
+  public EmitterLodLevel clone() {
+    try {
+      return (EmitterLodLevel) super.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError();
+    }
+  }
+}
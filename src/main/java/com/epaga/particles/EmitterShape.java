@@ -33,7 +33,6 @@ package com.epaga.particles;
 
 import com.jme3.export.*;
 import com.jme3.material.Material;
-import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Spatial;
 
@@ -55,6 +54,8 @@ public abstract class EmitterShape implements Savable, Cloneable {
   protected transient Vector3f nextDirection = new Vector3f();
   protected transient Vector3f nextPosition = new Vector3f();
   protected transient Vector3f tempVec = new Vector3f();
+  // set to the owning emitter's generator when the shape is assigned to an emitter
+  protected transient ParticleRandom random = new ParticleRandom();
 
   public abstract void setNext();
   public abstract void setNext(int index);
@@ -65,6 +66,44 @@ public abstract class EmitterShape implements Savable, Cloneable {
 
   public abstract Spatial getDebugShape(Material mat, boolean ignoreTransforms);
 
+  /**
+   * Picks the emission points of several particles at once. The positions and directions are stored as x, y, z
+   * triples. The default picks one point after the other with setNext(), shapes can override it to sample
+   * all of the points in a single loop.
+   *
+   * @param count The number of points to pick
+   * @param positions Receives count positions
+   * @param directions Receives count directions
+   * @param indexes Receives the shape index of each point, see getIndex()
+   */
+  public void sample(int count, float[] positions, float[] directions, int[] indexes) {
+    for (int i = 0, v = 0; i < count; i++, v += 3) {
+      setNext();
+      Vector3f position = getNextTranslation();
+      Vector3f direction = getNextDirection();
+      positions[v] = position.x;
+      positions[v + 1] = position.y;
+      positions[v + 2] = position.z;
+      directions[v] = direction.x;
+      directions[v + 1] = direction.y;
+      directions[v + 2] = direction.z;
+      indexes[i] = getIndex();
+    }
+  }
+
+  /**
+   * Sets the generator used to pick emission points and directions
+   *
+   * @param random The random number generator
+   */
+  public void setRandom(ParticleRandom random) {
+    this.random = random;
+  }
+
+  public ParticleRandom getRandom() {
+    return random;
+  }
+
   public float getRandomDirection() {
     return randomDirection;
   }
@@ -95,15 +134,15 @@ public abstract class EmitterShape implements Savable, Cloneable {
 
   protected void applyRootBehaviors() {
     if (randomizePosition > 0) {
-      nextPosition.add((randomizePosition * 2.0f * (FastMath.nextRandomFloat() - 0.5f)),
-          (randomizePosition * 2.0f * (FastMath.nextRandomFloat() - 0.5f)),
-          (randomizePosition * 2.0f * (FastMath.nextRandomFloat() - 0.5f)));
+      nextPosition.add((randomizePosition * 2.0f * (random.nextFloat() - 0.5f)),
+          (randomizePosition * 2.0f * (random.nextFloat() - 0.5f)),
+          (randomizePosition * 2.0f * (random.nextFloat() - 0.5f)));
     }
 
     if (randomDirection > 0) {
-      tempVec.set((2.0f * (FastMath.nextRandomFloat() - 0.5f)),
-          (2.0f * (FastMath.nextRandomFloat() - 0.5f)),
-          (2.0f * (FastMath.nextRandomFloat() - 0.5f)));
+      tempVec.set((2.0f * (random.nextFloat() - 0.5f)),
+          (2.0f * (random.nextFloat() - 0.5f)),
+          (2.0f * (random.nextFloat() - 0.5f)));
       nextDirection.x = nextDirection.x * (1.0f - randomDirection) + randomDirection * tempVec.x;
       nextDirection.y = nextDirection.y * (1.0f - randomDirection) + randomDirection * tempVec.y;
       nextDirection.z = nextDirection.z * (1.0f - randomDirection) + randomDirection * tempVec.z;
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+
+/**
+ * ParticleExtents
+ * Collects the smallest box around a set of particle positions and the largest particle size, so an emitter
+ * can build its bounds while it moves the particles instead of scanning the vertex buffers afterwards.
+ *
+ * @author Jeddic
+ */
+final class ParticleExtents {
+
+  float minX, minY, minZ;
+  float maxX, maxY, maxZ;
+  float maxSize;
+
+  ParticleExtents() {
+    clear();
+  }
+
+  void clear() {
+    minX = minY = minZ = Float.POSITIVE_INFINITY;
+    maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+    maxSize = 0;
+  }
+
+  boolean isEmpty() {
+    return minX > maxX;
+  }
+
+  boolean contains(float x, float y, float z) {
+    return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+  }
+
+  void include(float x, float y, float z) {
+    minX = Math.min(minX, x);
+    maxX = Math.max(maxX, x);
+    minY = Math.min(minY, y);
+    maxY = Math.max(maxY, y);
+    minZ = Math.min(minZ, z);
+    maxZ = Math.max(maxZ, z);
+  }
+
+  void includeSize(float size) {
+    maxSize = Math.max(maxSize, size);
+  }
+
+  void merge(ParticleExtents other) {
+    if (other.isEmpty()) {
+      return;
+    }
+    include(other.minX, other.minY, other.minZ);
+    include(other.maxX, other.maxY, other.maxZ);
+    includeSize(other.maxSize);
+  }
+
+  /**
+   * Writes the extents into a bounding box
+   *
+   * @param padding How far to grow the box on every side
+   * @param store The box to store the result in
+   */
+  void toBoundingBox(float padding, BoundingBox store) {
+    Vector3f center = store.getCenter();
+    center.set((minX + maxX) * 0.5f, (minY + maxY) * 0.5f, (minZ + maxZ) * 0.5f);
+    store.setCenter(center);
+    store.setXExtent((maxX - minX) * 0.5f + padding);
+    store.setYExtent((maxY - minY) * 0.5f + padding);
+    store.setZExtent((maxZ - minZ) * 0.5f + padding);
+  }
+}
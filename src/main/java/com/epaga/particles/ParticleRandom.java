@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ParticleRandom
+ * A small, non-synchronized random number generator (SplitMix64). Every emitter owns one so emission, shapes,
+ * value types and influencers don't contend on the global FastMath.rand. Instances must not be shared between
+ * threads.
+ *
+ * @author Jeddic
+ */
+public class ParticleRandom {
+
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final float FLOAT_UNIT = 1.0f / (1 << 24);
+  private static final AtomicLong seedUniquifier = new AtomicLong(System.nanoTime());
+
+  private long state;
+
+  /**
+   * Creates a generator with a seed that differs between instances
+   */
+  public ParticleRandom() {
+    this(mix64(seedUniquifier.addAndGet(GOLDEN_GAMMA) ^ System.nanoTime()));
+  }
+
+  public ParticleRandom(long seed) {
+    setSeed(seed);
+  }
+
+  /**
+   * Restarts the sequence from the given seed
+   *
+   * @param seed The seed
+   */
+  public void setSeed(long seed) {
+    this.state = seed;
+  }
+
+  public long nextLong() {
+    state += GOLDEN_GAMMA;
+    return mix64(state);
+  }
+
+  public int nextInt() {
+    return (int) (nextLong() >>> 32);
+  }
+
+  /**
+   * Returns a random int between 0 (inclusive) and bound (exclusive)
+   *
+   * @param bound The upper bound, must be positive
+   * @return The random int
+   */
+  public int nextInt(int bound) {
+    return (int) (((nextLong() >>> 32) * bound) >>> 32);
+  }
+
+  /**
+   * Returns a random int between min and max, both inclusive. Matches FastMath.nextRandomInt(min, max).
+   *
+   * @param min The smallest value
+   * @param max The largest value
+   * @return The random int
+   */
+  public int nextInt(int min, int max) {
+    return nextInt(max - min + 1) + min;
+  }
+
+  /**
+   * Returns a random float between 0 (inclusive) and 1 (exclusive)
+   *
+   * @return The random float
+   */
+  public float nextFloat() {
+    return (nextLong() >>> 40) * FLOAT_UNIT;
+  }
+
+  /**
+   * Returns a random float between -1 and 1
+   *
+   * @return The random float
+   */
+  public float nextSignedFloat() {
+    return 2.0f * nextFloat() - 1.0f;
+  }
+
+  public boolean nextBoolean() {
+    return nextLong() < 0;
+  }
+
+  /**
+   * Counter based random long. The result depends only on the arguments, so values can be drawn in any order
+   * and from any thread and still come out the same.
+   *
+   * @param seed The stream seed, usually the emitter's random stream seed
+   * @param serial The serial number of the particle drawing the value
+   * @param draw The index of the draw for that particle
+   * @return The random long
+   */
+  public static long hash(long seed, long serial, int draw) {
+    return mix64(mix64(seed + serial * GOLDEN_GAMMA) + (draw + 1L) * GOLDEN_GAMMA);
+  }
+
+  /**
+   * Counter based random float between 0 (inclusive) and 1 (exclusive), see hash(long, long, int)
+   *
+   * @param seed The stream seed
+   * @param serial The serial number of the particle drawing the value
+   * @param draw The index of the draw for that particle
+   * @return The random float
+   */
+  public static float hashFloat(long seed, long serial, int draw) {
+    return (hash(seed, serial, draw) >>> 40) * FLOAT_UNIT;
+  }
+
+  /**
+   * The SplitMix64 finalizer, also usable as a stand alone 64 bit hash
+   *
+   * @param z The value to mix
+   * @return The mixed value
+   */
+  public static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParticleSystemState
+ * Updates all registered emitters as parallel tasks on a ForkJoinPool instead of one after another from each
+ * emitter's EmitterControl. The tasks are joined before the state's update returns, so the emitters are done
+ * before the scene graph is updated and rendered.
+ *
+ * Emitters with at least getSplitThreshold() particles also split their particle update across the pool, idle
+ * workers steal those chunks once the smaller emitters are finished.
+ *
+ * Registered emitters must not share emitter shapes or influencer instances.
+ *
+ * @author Jeddic
+ */
+public class ParticleSystemState extends BaseAppState {
+
+  private final List<Emitter> emitters = new ArrayList<>();
+  private final ForkJoinPool pool;
+  private int splitThreshold = 8192;
+
+  public ParticleSystemState() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param pool The pool used to update the emitters
+   */
+  public ParticleSystemState(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Adds an emitter to be updated by this state. While the state is enabled the emitter's EmitterControl
+   * no longer updates it.
+   *
+   * @param emitter The emitter to add
+   */
+  public void addEmitter(Emitter emitter) {
+    if (!emitters.contains(emitter)) {
+      emitters.add(emitter);
+      if (isEnabled()) {
+        setManaged(emitter, true);
+      }
+    }
+  }
+
+  /**
+   * Removes an emitter from this state, the emitter's EmitterControl takes over updating it again
+   *
+   * @param emitter The emitter to remove
+   */
+  public void removeEmitter(Emitter emitter) {
+    if (emitters.remove(emitter)) {
+      setManaged(emitter, false);
+    }
+  }
+
+  public List<Emitter> getEmitters() {
+    return emitters;
+  }
+
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Sets how many active particles an emitter needs before its particle update is split into several tasks
+   *
+   * @param splitThreshold The particle count
+   */
+  public void setSplitThreshold(int splitThreshold) {
+    this.splitThreshold = splitThreshold;
+  }
+
+  public int getSplitThreshold() {
+    return splitThreshold;
+  }
+
+  @Override
+  protected void initialize(Application app) {
+  }
+
+  @Override
+  protected void cleanup(Application app) {
+  }
+
+  @Override
+  protected void onEnable() {
+    for (Emitter emitter : emitters) {
+      setManaged(emitter, true);
+    }
+  }
+
+  @Override
+  protected void onDisable() {
+    for (Emitter emitter : emitters) {
+      setManaged(emitter, false);
+    }
+  }
+
+  @Override
+  public void update(float tpf) {
+    if (emitters.isEmpty()) {
+      return;
+    }
+
+    // world transforms are refreshed through the parents, do it here before the emitters read them concurrently
+    EmitterTask[] tasks = new EmitterTask[emitters.size()];
+    for (int i = 0; i < tasks.length; i++) {
+      Emitter emitter = emitters.get(i);
+      emitter.getWorldTransform();
+      tasks[i] = new EmitterTask(emitter, tpf, emitter.getActiveParticleCount() >= splitThreshold);
+    }
+
+    pool.invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+
+    // bounds propagate up the scene graph so they are updated on this thread
+    for (Emitter emitter : emitters) {
+      emitter.updateSimulatedBound();
+    }
+  }
+
+  private void setManaged(Emitter emitter, boolean managed) {
+    EmitterControl control = emitter.getControl(EmitterControl.class);
+    if (control != null) {
+      control.setManaged(managed);
+    }
+  }
+
+  private class EmitterTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Emitter emitter;
+    private final float tpf;
+    private final boolean split;
+
+    EmitterTask(Emitter emitter, float tpf, boolean split) {
+      this.emitter = emitter;
+      this.tpf = tpf;
+      this.split = split;
+    }
+
+    @Override
+    protected void compute() {
+      emitter.simulate(tpf, split ? pool : null);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParticleUpdateTask
+ * Updates a range of an emitter's particles, splitting the range in half until it is small enough to run
+ * on a single worker of a ForkJoinPool.
+ *
+ * @author Jeddic
+ */
+class ParticleUpdateTask extends RecursiveAction {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Emitter emitter;
+  private final int start;
+  private final int end;
+  private final float tpf;
+  // the extents of the integrated particles, null if the emitter integrates them afterwards
+  private final ParticleExtents extents;
+
+  /**
+   * @param emitter The emitter to update
+   * @param start The first particle index (inclusive)
+   * @param end The last particle index (exclusive)
+   * @param tpf The delta time for the last frame
+   * @param integrate true to move the particles along their velocity once the influencers are done
+   */
+  ParticleUpdateTask(Emitter emitter, int start, int end, float tpf, boolean integrate) {
+    this.emitter = emitter;
+    this.start = start;
+    this.end = end;
+    this.tpf = tpf;
+    this.extents = integrate ? new ParticleExtents() : null;
+  }
+
+  /**
+   * Returns the extents of the particles integrated by this task and its subtasks
+   *
+   * @return The extents, or null if the task did not integrate the particles
+   */
+  ParticleExtents getExtents() {
+    return extents;
+  }
+
+  @Override
+  protected void compute() {
+    if (end - start <= emitter.getParallelChunkSize()) {
+      emitter.updateParticleRange(start, end, tpf, extents);
+      return;
+    }
+    int middle = (start + end) >>> 1;
+    boolean integrate = extents != null;
+    ParticleUpdateTask left = new ParticleUpdateTask(emitter, start, middle, tpf, integrate);
+    ParticleUpdateTask right = new ParticleUpdateTask(emitter, middle, end, tpf, integrate);
+    invokeAll(left, right);
+    if (integrate) {
+      // merged on the joining thread, no locking needed
+      extents.merge(left.extents);
+      extents.merge(right.extents);
+    }
+  }
+}
@@ -82,23 +82,46 @@ public class EmitterCircle extends EmitterShape {
   public void setNext() {
     nextPosition.set(1, 0, 0);
     temp.set(Quaternion.IDENTITY);
-    temp.fromAngleAxis(arc * FastMath.nextRandomFloat(), Vector3f.UNIT_Y);
+    temp.fromAngleAxis(arc * random.nextFloat(), Vector3f.UNIT_Y);
     temp.mult(nextPosition, nextPosition);
 
     // now generate length
-    float v = FastMath.nextRandomFloat();
+    float v = random.nextFloat();
     float len = radius * (v * radiusThickness + (1 - radiusThickness));
     nextPosition.multLocal(len);
 
-    nextDirection.set(2.0f * (FastMath.nextRandomFloat() - 0.5f),
+    nextDirection.set(2.0f * (random.nextFloat() - 0.5f),
                       0,
-                      2.0f * (FastMath.nextRandomFloat() - 0.5f));
+                      2.0f * (random.nextFloat() - 0.5f));
 
     nextDirection.normalizeLocal();
 
     applyRootBehaviors();
   }
 
+  @Override
+  public void sample(int count, float[] positions, float[] directions, int[] indexes) {
+    for (int i = 0, v = 0; i < count; i++, v += 3) {
+      // the same rotation of the x axis around y as setNext
+      float angle = arc * random.nextFloat();
+      float len = radius * (random.nextFloat() * radiusThickness + (1 - radiusThickness));
+      positions[v] = FastMath.cos(angle) * len;
+      positions[v + 1] = 0;
+      positions[v + 2] = -FastMath.sin(angle) * len;
+
+      float dx = 2.0f * (random.nextFloat() - 0.5f);
+      float dz = 2.0f * (random.nextFloat() - 0.5f);
+      float lengthSquared = dx * dx + dz * dz;
+      float scale = lengthSquared > 0 ? FastMath.invSqrt(lengthSquared) : 0;
+      directions[v] = dx * scale;
+      directions[v + 1] = 0;
+      directions[v + 2] = dz * scale;
+      indexes[i] = -1;
+
+      applyRootBehaviors();
+    }
+  }
+
   public float getRadius() {
     return radius;
   }
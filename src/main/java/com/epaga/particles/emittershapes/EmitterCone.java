@@ -84,15 +84,15 @@ public class EmitterCone extends EmitterShape {
   public void setNext() {
     nextPosition.set(1, 0, 0);
     temp.set(Quaternion.IDENTITY);
-    temp.fromAngleAxis(arc * FastMath.nextRandomFloat(), Vector3f.UNIT_Y);
+    temp.fromAngleAxis(arc * random.nextFloat(), Vector3f.UNIT_Y);
     temp.mult(nextPosition, nextPosition);
 
     if (emitFromVolume) {
-      float height = FastMath.nextRandomFloat() * length;
+      float height = random.nextFloat() * length;
       float calcRadius = (float) (radius + Math.atan(angle) * height);
 
       // now generate length
-      float v = FastMath.nextRandomFloat();
+      float v = random.nextFloat();
       float len = calcRadius * (v * radiusThickness + (1 - radiusThickness));
       nextPosition.multLocal(len);
       nextPosition.y = height;
@@ -100,16 +100,16 @@ public class EmitterCone extends EmitterShape {
     } else {
 
       // now generate length
-      float v = FastMath.nextRandomFloat();
+      float v = random.nextFloat();
       float len = radius * (v * radiusThickness + (1 - radiusThickness));
       nextPosition.multLocal(len);
 
     }
 
     nextDirection.set(0, 1, 0);
-    temp.fromAngleAxis(angle * FastMath.nextRandomFloat(), Vector3f.UNIT_Z);
+    temp.fromAngleAxis(angle * random.nextFloat(), Vector3f.UNIT_Z);
     temp.mult(nextDirection, nextDirection);
-    temp.fromAngleAxis(arc * FastMath.nextRandomFloat(), Vector3f.UNIT_Y);
+    temp.fromAngleAxis(arc * random.nextFloat(), Vector3f.UNIT_Y);
     temp.mult(nextDirection, nextDirection);
 
     nextDirection.normalizeLocal();
@@ -36,7 +36,6 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.material.Material;
-import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
 import com.epaga.particles.EmitterShape;
 import com.jme3.scene.Geometry;
@@ -79,7 +78,7 @@ public class EmitterLine extends EmitterShape {
 
   @Override
   public void setNext() {
-    nextPosition.set(radius * (2.0f * (FastMath.nextRandomFloat() - 0.5f)), 0, 0);
+    nextPosition.set(radius * (2.0f * (random.nextFloat() - 0.5f)), 0, 0);
     nextDirection.set(0, 1, 0);
 
     applyRootBehaviors();
@@ -38,7 +38,6 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.material.Material;
-import com.jme3.math.FastMath;
 import com.jme3.math.Triangle;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
@@ -65,6 +64,17 @@ public class EmitterMesh extends EmitterShape {
 	Vector3f b = new Vector3f();
 	Vector3f result = new Vector3f();
 	private int triCount;
+	// per triangle the three corners, the center and the normal, see TRIANGLE_STRIDE
+	private float[] triangles = new float[0];
+	// Walker alias table over the triangle areas
+	private float[] aliasProbability = new float[0];
+	private int[] alias = new int[0];
+	private Vector3f center = new Vector3f();
+	private Vector3f normal = new Vector3f();
+
+	private static final int TRIANGLE_STRIDE = 15;
+	private static final int CENTER = 9;
+	private static final int NORMAL = 12;
 
 	public EmitterMesh() {
 
@@ -88,7 +98,101 @@ public class EmitterMesh extends EmitterShape {
 	 */
 	public final void setShape(Mesh mesh) {
 		this.mesh = mesh;
+		updateTriangles();
+	}
+
+	/**
+	 * Reads the triangles of the shape's mesh into the tables used to pick emission points. Called when the
+	 * shape is set, needs to be called again by hand when the mesh's positions or indexes change.
+	 */
+	public void updateTriangles() {
 		triCount = mesh.getTriangleCount();
+		triangles = new float[triCount * TRIANGLE_STRIDE];
+		float[] areas = new float[triCount];
+		float totalArea = 0;
+		for (int i = 0; i < triCount; i++) {
+			mesh.getTriangle(i, triStore);
+			triStore.calculateCenter();
+			triStore.calculateNormal();
+			int t = i * TRIANGLE_STRIDE;
+			put(t, triStore.get1());
+			put(t + 3, triStore.get2());
+			put(t + 6, triStore.get3());
+			put(t + CENTER, triStore.getCenter());
+			put(t + NORMAL, triStore.getNormal());
+
+			a.set(triStore.get2()).subtractLocal(triStore.get1());
+			b.set(triStore.get3()).subtractLocal(triStore.get1());
+			areas[i] = a.crossLocal(b).length() * 0.5f;
+			totalArea += areas[i];
+		}
+		buildAliasTable(areas, totalArea);
+	}
+
+	private void put(int offset, Vector3f v) {
+		triangles[offset] = v.x;
+		triangles[offset + 1] = v.y;
+		triangles[offset + 2] = v.z;
+	}
+
+	/**
+	 * Builds the alias table so picking a triangle is proportional to it's area. Each column i holds the
+	 * chance to keep i and the triangle to take instead.
+	 */
+	private void buildAliasTable(float[] areas, float totalArea) {
+		int n = areas.length;
+		aliasProbability = new float[n];
+		alias = new int[n];
+		if (n == 0) {
+			return;
+		}
+		// scale the areas so the average is 1, flat meshes fall back to picking triangles evenly
+		float[] scaled = new float[n];
+		for (int i = 0; i < n; i++) {
+			scaled[i] = totalArea > 0 ? areas[i] * n / totalArea : 1;
+		}
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallCount = 0;
+		int largeCount = 0;
+		for (int i = 0; i < n; i++) {
+			if (scaled[i] < 1) {
+				small[smallCount++] = i;
+			} else {
+				large[largeCount++] = i;
+			}
+		}
+		while (smallCount > 0 && largeCount > 0) {
+			int less = small[--smallCount];
+			int more = large[--largeCount];
+			aliasProbability[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = scaled[more] + scaled[less] - 1;
+			if (scaled[more] < 1) {
+				small[smallCount++] = more;
+			} else {
+				large[largeCount++] = more;
+			}
+		}
+		// whatever is left is full up to rounding errors
+		while (largeCount > 0) {
+			int i = large[--largeCount];
+			aliasProbability[i] = 1;
+			alias[i] = i;
+		}
+		while (smallCount > 0) {
+			int i = small[--smallCount];
+			aliasProbability[i] = 1;
+			alias[i] = i;
+		}
+	}
+
+	/**
+	 * Picks a triangle with a chance proportional to it's area
+	 */
+	private int nextTriangle() {
+		int column = random.nextInt(triCount);
+		return random.nextFloat() < aliasProbability[column] ? column : alias[column];
 	}
 	
 	/**
@@ -100,13 +204,11 @@ public class EmitterMesh extends EmitterShape {
 	}
 	
 	/**
-	 * Selects a random face as the next particle emission point
+	 * Selects a random face as the next particle emission point. Larger faces are picked more often so
+	 * particles are spread evenly over the surface.
 	 */
 	public void setNext() {
-		triangleIndex = FastMath.rand.nextInt(triCount);
-		mesh.getTriangle(triangleIndex, triStore);
-		triStore.calculateCenter();
-		triStore.calculateNormal();
+		setNext(nextTriangle());
 	}
 	
 	/**
@@ -114,9 +216,29 @@ public class EmitterMesh extends EmitterShape {
 	 * @param triangleIndex The index of the face to set as the particle emission point
 	 */
 	public void setNext(int triangleIndex) {
-		mesh.getTriangle(triangleIndex, triStore);
-		triStore.calculateCenter();
-		triStore.calculateNormal();
+		this.triangleIndex = triangleIndex;
+		int t = triangleIndex * TRIANGLE_STRIDE;
+		center.set(triangles[t + CENTER], triangles[t + CENTER + 1], triangles[t + CENTER + 2]);
+		normal.set(triangles[t + NORMAL], triangles[t + NORMAL + 1], triangles[t + NORMAL + 2]);
+	}
+
+	@Override
+	public void sample(int count, float[] positions, float[] directions, int[] indexes) {
+		float[] triangles = this.triangles;
+		for (int i = 0, v = 0; i < count; i++, v += 3) {
+			int index = nextTriangle();
+			int t = index * TRIANGLE_STRIDE;
+			positions[v] = triangles[t + CENTER];
+			positions[v + 1] = triangles[t + CENTER + 1];
+			positions[v + 2] = triangles[t + CENTER + 2];
+			directions[v] = triangles[t + NORMAL];
+			directions[v + 1] = triangles[t + NORMAL + 1];
+			directions[v + 2] = triangles[t + NORMAL + 2];
+			indexes[i] = index;
+		}
+		if (count > 0) {
+			setNext(indexes[count - 1]);
+		}
 	}
 	
 	/**
@@ -132,22 +254,23 @@ public class EmitterMesh extends EmitterShape {
 	 * @return A Vector3f representing the local translation of the selected emission point
 	 */
 	public Vector3f getNextTranslation(){
-		return triStore.getCenter();
+		return center;
 	}
 	
 	public Vector3f getRandomTranslation() {
-		p1.set(triStore.get1().subtract(triStore.getCenter()));
-		p2.set(triStore.get2().subtract(triStore.getCenter()));
-		p3.set(triStore.get3().subtract(triStore.getCenter()));
+		int t = triangleIndex * TRIANGLE_STRIDE;
+		p1.set(triangles[t], triangles[t + 1], triangles[t + 2]).subtractLocal(center);
+		p2.set(triangles[t + 3], triangles[t + 4], triangles[t + 5]).subtractLocal(center);
+		p3.set(triangles[t + 6], triangles[t + 7], triangles[t + 8]).subtractLocal(center);
 		
-		a.interpolateLocal(p1, p2, 1f- FastMath.rand.nextFloat());
-		b.interpolateLocal(p1, p3, 1f- FastMath.rand.nextFloat());
-		result.interpolateLocal(a,b, FastMath.rand.nextFloat());
+		a.interpolateLocal(p1, p2, 1f- random.nextFloat());
+		b.interpolateLocal(p1, p3, 1f- random.nextFloat());
+		result.interpolateLocal(a,b, random.nextFloat());
 		
 		return result;
 		/*
-		return (p1.interpolate(p2, FastMath.rand.nextFloat()))
-			.addLocal(p4.interpolate(p3, FastMath.rand.nextFloat()))
+		return (p1.interpolate(p2, random.nextFloat()))
+			.addLocal(p4.interpolate(p3, random.nextFloat()))
 			.divideLocal(2f);
 		*/
 	}
@@ -157,7 +280,7 @@ public class EmitterMesh extends EmitterShape {
 	 * @return A Vector3f containing the normal of the selected emission point
 	 */
 	public Vector3f getNextDirection(){
-		return triStore.getNormal();
+		return normal;
 	}
 
 	@Override
@@ -172,10 +295,18 @@ public class EmitterMesh extends EmitterShape {
 		super.read(im);
 		InputCapsule ic = im.getCapsule(this);
 		mesh = (Mesh)ic.readSavable("mesh", new TriangleEmitterShape(1));
-		triCount = mesh.getTriangleCount();
+		updateTriangles();
 
 	}
 
+	@Override
+	public EmitterMesh clone() {
+		EmitterMesh clone = (EmitterMesh) super.clone();
+		// the triangle tables are never modified and can be shared
+		clone.center = center.clone();
+		clone.normal = normal.clone();
+		return clone;
+	}
 
 	public boolean equals(Object o) {
 		if (!super.equals(o)) return false;
@@ -84,26 +84,52 @@ public class EmitterSphere extends EmitterShape {
   @Override
   public void setNext() {
     nextPosition.set(0, 1, 0);
-    temp2.fromAngleAxis(3.14159f * FastMath.nextRandomFloat(), Vector3f.UNIT_Z);
+    temp2.fromAngleAxis(3.14159f * random.nextFloat(), Vector3f.UNIT_Z);
     temp.set(Quaternion.IDENTITY);
-    temp.fromAngleAxis(arc * FastMath.nextRandomFloat(), Vector3f.UNIT_Y);
+    temp.fromAngleAxis(arc * random.nextFloat(), Vector3f.UNIT_Y);
     temp2.mult(nextPosition, nextPosition);
     temp.mult(nextPosition, nextPosition);
 
     // now generate length
-    float v = FastMath.nextRandomFloat();
+    float v = random.nextFloat();
     float len = radius * (v * radiusThickness + (1 - radiusThickness));
     nextPosition.multLocal(len);
 
-    nextDirection.set(2.0f * (FastMath.nextRandomFloat() - 0.5f),
-                      2.0f * (FastMath.nextRandomFloat() - 0.5f),
-                      2.0f * (FastMath.nextRandomFloat() - 0.5f));
+    nextDirection.set(2.0f * (random.nextFloat() - 0.5f),
+                      2.0f * (random.nextFloat() - 0.5f),
+                      2.0f * (random.nextFloat() - 0.5f));
 
     nextDirection.normalizeLocal();
 
     applyRootBehaviors();
   }
 
+  @Override
+  public void sample(int count, float[] positions, float[] directions, int[] indexes) {
+    for (int i = 0, v = 0; i < count; i++, v += 3) {
+      // the same rotations of the up vector as setNext, first around z then around y
+      float polar = 3.14159f * random.nextFloat();
+      float azimuth = arc * random.nextFloat();
+      float sinPolar = FastMath.sin(polar);
+      float len = radius * (random.nextFloat() * radiusThickness + (1 - radiusThickness));
+      positions[v] = -sinPolar * FastMath.cos(azimuth) * len;
+      positions[v + 1] = FastMath.cos(polar) * len;
+      positions[v + 2] = sinPolar * FastMath.sin(azimuth) * len;
+
+      float dx = 2.0f * (random.nextFloat() - 0.5f);
+      float dy = 2.0f * (random.nextFloat() - 0.5f);
+      float dz = 2.0f * (random.nextFloat() - 0.5f);
+      float lengthSquared = dx * dx + dy * dy + dz * dz;
+      float scale = lengthSquared > 0 ? FastMath.invSqrt(lengthSquared) : 0;
+      directions[v] = dx * scale;
+      directions[v + 1] = dy * scale;
+      directions[v + 2] = dz * scale;
+      indexes[i] = -1;
+
+      applyRootBehaviors();
+    }
+  }
+
   public float getRadius() {
     return radius;
   }
@@ -31,6 +31,7 @@
  */
 package com.epaga.particles.influencers;
 
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
 import com.jme3.collision.CollisionResult;
 import com.jme3.collision.CollisionResults;
@@ -38,6 +39,8 @@ import com.jme3.math.Ray;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 
+import java.util.EnumSet;
+
 /**
  * BasicPhysicsInfluencer
  * A basic physics influencer which allows particles to bounce off a given geometry
@@ -97,6 +100,11 @@ public class BasicPhysicsInfluencer extends ParticleInfluencer {
     }
   }
 
+  @Override
+  public boolean isExpensive() {
+    return true;
+  }
+
   /**
    * Gets the amount the velocity is reduced after every collision
    * @return the dampened amount 0-1
@@ -145,6 +153,11 @@ public class BasicPhysicsInfluencer extends ParticleInfluencer {
     this.collisionMesh = collisionMesh;
   }
 
+  @Override
+  public EnumSet<ParticleComponent> getRequiredComponents() {
+    return EnumSet.noneOf(ParticleComponent.class);
+  }
+
   @Override
   public void initialize(ParticleData p) {
 
@@ -37,10 +37,14 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.math.ColorRGBA;
+import com.jme3.util.TempVars;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.epaga.particles.valuetypes.ColorValueType;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * Color Module
@@ -60,7 +64,7 @@ public class ColorInfluencer extends ParticleInfluencer {
   @Override
 	public void update(ParticleData p, float tpf) {
 		if (enabled) {
-			colorOverTime.getValueColor(p.percentLife, p.randomValue, p.color);
+			colorOverTime.getValueColor(p.percentLife, p.randomValue, emitter.getRandom(), p.color);
 
 			// multiply by start color
 			p.color.r *= p.startColor.r;
@@ -70,9 +74,61 @@ public class ColorInfluencer extends ParticleInfluencer {
 		}
 	}
 
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+		if (enabled) {
+			TempVars vars = TempVars.get();
+			updateColor(storage, index, storage.percentLife[index], vars.color);
+			vars.release();
+		}
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		// one set of temp vars for the whole range rather than one per particle
+		TempVars vars = TempVars.get();
+		boolean[] active = storage.active;
+		float[] percentLife = storage.percentLife;
+		for (int i = start; i < end; i++) {
+			if (active[i]) {
+				updateColor(storage, i, percentLife[i], vars.color);
+			}
+		}
+		vars.release();
+	}
+
+	private void updateColor(ParticleStorage storage, int index, float percentLife, ColorRGBA temp) {
+		colorOverTime.getValueColor(percentLife, storage.randomValue[index], emitter.getRandom(), temp);
+
+		// multiply by start color
+		int c = index * 4;
+		storage.color[c] = temp.r * storage.startColor[c];
+		storage.color[c + 1] = temp.g * storage.startColor[c + 1];
+		storage.color[c + 2] = temp.b * storage.startColor[c + 2];
+		storage.color[c + 3] = temp.a * storage.startColor[c + 3];
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return !colorOverTime.drawsRandom();
+	}
+
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
+	}
+
 	@Override
 	public void initialize(ParticleData p) {
-		colorOverTime.getValueColor(0.0f, p.randomValue, p.color);
+		colorOverTime.getValueColor(0.0f, p.randomValue, emitter.getRandom(), p.color);
 
 
 		// multiply by start color
@@ -87,6 +143,22 @@ public class ColorInfluencer extends ParticleInfluencer {
 		p.color.set(0.0f, 0.0f, 0.0f, 0.0f);
 	}
 
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+		TempVars vars = TempVars.get();
+		updateColor(storage, index, 0.0f, vars.color);
+		vars.release();
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+		int c = index * 4;
+		storage.color[c] = 0.0f;
+		storage.color[c + 1] = 0.0f;
+		storage.color[c + 2] = 0.0f;
+		storage.color[c + 3] = 0.0f;
+	}
+
 	/**
 	 * This is a convenience method to quickly set a start and end color for a particle over time
 	 * @param start - the start color of the particle
@@ -32,15 +32,17 @@
 package com.epaga.particles.influencers;
 
 import com.epaga.particles.Emission;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
-import com.jme3.math.FastMath;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 /**
  * Emission module
@@ -57,15 +59,15 @@ public class EmissionInfluencer extends ParticleInfluencer {
   public void updateGlobal(float tpf) {
     for (Emission emission : emissions) {
       int cycles = (int)emission.getCycles().getValue(emitter.getCurrentDuration()/emitter.getDuration(),
-          FastMath.nextRandomFloat());
+          emitter.getRandom().nextFloat(), emitter.getRandom());
       // check if we have cycles to emit particles or the duration is long enough
       if (emitter.getCurrentDuration() >= emission.getDelay() && (cycles == -1 || cycles < emission.getCurrentCycleCount())) {
         float t = emission.getTimeSinceLast();
         if (t + tpf >= emission.getInterval()) {
           int count = (int)emission.getCount().getValue(emitter.getCurrentDuration()/emitter.getDuration(),
-              FastMath.nextRandomFloat());
+              emitter.getRandom().nextFloat(), emitter.getRandom());
           for (int i=0; i < count; i++) {
-            if (FastMath.nextRandomFloat() <=  emission.getProbability()) {
+            if (emitter.getRandom().nextFloat() <=  emission.getProbability()) {
               emitter.emitNextParticle();
             }
           }
@@ -83,6 +85,16 @@ public class EmissionInfluencer extends ParticleInfluencer {
 
   }
 
+  @Override
+  public boolean supportsParticleStorage() {
+    return true;
+  }
+
+  @Override
+  public void update(ParticleStorage storage, int index, float tpf) {
+
+  }
+
   /**
    * Gets the list of emissions
    * @return
@@ -95,6 +107,11 @@ public class EmissionInfluencer extends ParticleInfluencer {
     this.emissions = emissions;
   }
 
+  @Override
+  public EnumSet<ParticleComponent> getRequiredComponents() {
+    return EnumSet.noneOf(ParticleComponent.class);
+  }
+
   @Override
   public void initialize(ParticleData p) {
 
@@ -105,6 +122,14 @@ public class EmissionInfluencer extends ParticleInfluencer {
 
   }
 
+  @Override
+  public void initialize(ParticleStorage storage, int index) {
+  }
+
+  @Override
+  public void reset(ParticleStorage storage, int index) {
+  }
+
   @Override
   public void write(JmeExporter ex) throws IOException {
     super.write(ex);
@@ -31,15 +31,19 @@
  */
 package com.epaga.particles.influencers;
 
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.epaga.particles.valuetypes.VectorValueType;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.math.Vector3f;
+import com.jme3.util.TempVars;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * Gravity Module
@@ -52,8 +56,6 @@ import java.io.IOException;
 public class GravityInfluencer extends ParticleInfluencer {
 	private VectorValueType gravity = new VectorValueType(new Vector3f(0,9.8f,0));
 
-	private transient Vector3f store = new Vector3f();
-
 	public GravityInfluencer() {
 
 	}
@@ -65,18 +67,133 @@ public class GravityInfluencer extends ParticleInfluencer {
   @Override
 	public void update(ParticleData p, float tpf) {
 		if (enabled) {
-			gravity.getValue3f(p.percentLife, p.randomValue, store);
+			TempVars vars = TempVars.get();
+			applyGravity(p, tpf, vars.vect1);
+			vars.release();
+		}
+	}
+
+	private void applyGravity(ParticleData p, float tpf, Vector3f store) {
+		gravity.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), store);
+
+		// transform so the gravity applies according to the world
+		if (emitter.getParticlesFollowEmitter()) {
+			emitter.getWorldTransform().transformVector(store, store);
+		}
+		p.velocity.x -= store.x * tpf;
+		p.velocity.y -= store.y * tpf;
+		p.velocity.z -= store.z * tpf;
+	}
+
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+		if (enabled) {
+			TempVars vars = TempVars.get();
+			applyGravity(storage, index, tpf, vars.vect1);
+			vars.release();
+		}
+	}
+
+	private void applyGravity(ParticleStorage storage, int index, float tpf, Vector3f store) {
+		gravity.getValue3f(storage.percentLife[index], storage.randomValue[index], emitter.getRandom(), store);
+
+		// transform so the gravity applies according to the world
+		if (emitter.getParticlesFollowEmitter()) {
+			emitter.getWorldTransform().transformVector(store, store);
+		}
+		int v = index * 3;
+		storage.velocity[v] -= store.x * tpf;
+		storage.velocity[v + 1] -= store.y * tpf;
+		storage.velocity[v + 2] -= store.z * tpf;
+	}
+
+	@Override
+	public void update(ParticleData[] particles, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		if (gravity.getType() != VectorValueType.Type.CONSTANT) {
+			// one set of temp vars for the whole range rather than one per particle
+			TempVars vars = TempVars.get();
+			for (int i = start; i < end; i++) {
+				ParticleData p = particles[i];
+				if (p.active) {
+					applyGravity(p, tpf, vars.vect1);
+				}
+			}
+			vars.release();
+			return;
+		}
+		// constant gravity is the same for every particle, work it out once for the whole pass
+		TempVars vars = TempVars.get();
+		Vector3f store = getConstantGravity(vars.vect1);
+		float x = store.x * tpf, y = store.y * tpf, z = store.z * tpf;
+		vars.release();
+		for (int i = start; i < end; i++) {
+			ParticleData p = particles[i];
+			if (p.active) {
+				p.velocity.x -= x;
+				p.velocity.y -= y;
+				p.velocity.z -= z;
+			}
+		}
+	}
 
-			// transform so the gravity applies according to the world
-			if (emitter.getParticlesFollowEmitter()) {
-				emitter.getWorldTransform().transformVector(store, store);
+	@Override
+	public void update(ParticleStorage storage, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		if (gravity.getType() != VectorValueType.Type.CONSTANT) {
+			TempVars vars = TempVars.get();
+			boolean[] active = storage.active;
+			for (int i = start; i < end; i++) {
+				if (active[i]) {
+					applyGravity(storage, i, tpf, vars.vect1);
+				}
 			}
-			p.velocity.x -= store.x * tpf;
-			p.velocity.y -= store.y * tpf;
-			p.velocity.z -= store.z * tpf;
+			vars.release();
+			return;
 		}
+		TempVars vars = TempVars.get();
+		Vector3f store = getConstantGravity(vars.vect1);
+		float x = store.x * tpf, y = store.y * tpf, z = store.z * tpf;
+		vars.release();
+		boolean[] active = storage.active;
+		float[] velocity = storage.velocity;
+		for (int i = start; i < end; i++) {
+			if (active[i]) {
+				int v = i * 3;
+				velocity[v] -= x;
+				velocity[v + 1] -= y;
+				velocity[v + 2] -= z;
+			}
+		}
+	}
+
+	private Vector3f getConstantGravity(Vector3f store) {
+		gravity.getValue3f(0, 0, emitter.getRandom(), store);
+		if (emitter.getParticlesFollowEmitter()) {
+			emitter.getWorldTransform().transformVector(store, store);
+		}
+		return store;
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return !gravity.drawsRandom();
 	}
 	
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
+	}
+
 	public void initialize(ParticleData p) {
 		
 	}
@@ -85,6 +202,14 @@ public class GravityInfluencer extends ParticleInfluencer {
 		
 	}
 
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+	}
+
 	/**
 	 * Sets gravity to the provided Vector3f
 	 * @param gravity Vector3f representing gravity
@@ -37,10 +37,14 @@ import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
+import com.jme3.util.TempVars;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.epaga.particles.valuetypes.VectorValueType;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * Impulse Module
@@ -58,34 +62,116 @@ public class ImpulseInfluencer extends ParticleInfluencer {
 	private VectorValueType linear = new VectorValueType(new Vector3f(0, 2, 0));
 	private VectorValueType orbital = new VectorValueType(new Vector3f(0, 0, 0));
 
-
-	private transient Vector3f tempOne = new Vector3f();
-	private transient Vector3f tempTwo = new Vector3f();
 	
 	public void update(ParticleData p, float tpf) {
 		if (enabled) {
-			if (FastMath.rand.nextFloat() > 1-(chance+tpf)) {
+			if (p.nextRandom() > 1-(chance+tpf)) {
+				TempVars vars = TempVars.get();
+				applyImpulse(p, vars.vect1, vars.vect2);
+				vars.release();
+			}
+		}
+	}
 
-				orbital.getValue3f(p.percentLife, p.randomValue, tempOne);
-				linear.getValue3f(p.percentLife, p.randomValue, tempTwo);
+	@Override
+	public void update(ParticleData[] particles, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		// one set of temp vars for the whole range rather than one per particle
+		TempVars vars = TempVars.get();
+		for (int i = start; i < end; i++) {
+			ParticleData p = particles[i];
+			if (p.active && p.nextRandom() > 1-(chance+tpf)) {
+				applyImpulse(p, vars.vect1, vars.vect2);
+			}
+		}
+		vars.release();
+	}
 
-				tempTwo.y += tempOne.x * Math.cos(8 * Math.PI * p.percentLife);
-				tempTwo.z += tempOne.x * Math.sin(8 * Math.PI * p.percentLife);
+	private void applyImpulse(ParticleData p, Vector3f tempOne, Vector3f tempTwo) {
+		orbital.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), tempOne);
+		linear.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), tempTwo);
 
-				// Y
-				tempTwo.x += tempOne.y * Math.cos(8 * Math.PI * p.percentLife);
-				tempTwo.z += tempOne.y * Math.sin(8 * Math.PI * p.percentLife);
+		tempTwo.y += tempOne.x * Math.cos(8 * Math.PI * p.percentLife);
+		tempTwo.z += tempOne.x * Math.sin(8 * Math.PI * p.percentLife);
 
-				// Z
-				tempTwo.x += tempOne.z * Math.cos(8 * Math.PI * p.percentLife);
-				tempTwo.y += tempOne.z * Math.sin(8 * Math.PI * p.percentLife);
-				tempTwo.multLocal(strength);
+		// Y
+		tempTwo.x += tempOne.y * Math.cos(8 * Math.PI * p.percentLife);
+		tempTwo.z += tempOne.y * Math.sin(8 * Math.PI * p.percentLife);
 
-				p.velocity.interpolateLocal(tempTwo, magnitude);
+		// Z
+		tempTwo.x += tempOne.z * Math.cos(8 * Math.PI * p.percentLife);
+		tempTwo.y += tempOne.z * Math.sin(8 * Math.PI * p.percentLife);
+		tempTwo.multLocal(strength);
+
+		p.velocity.interpolateLocal(tempTwo, magnitude);
+	}
+
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+		if (enabled) {
+			if (storage.nextRandom(index) > 1-(chance+tpf)) {
+				TempVars vars = TempVars.get();
+				applyImpulse(storage, index, vars.vect1, vars.vect2);
+				vars.release();
 			}
 		}
 	}
+
+	@Override
+	public void update(ParticleStorage storage, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		TempVars vars = TempVars.get();
+		boolean[] active = storage.active;
+		for (int i = start; i < end; i++) {
+			if (active[i] && storage.nextRandom(i) > 1-(chance+tpf)) {
+				applyImpulse(storage, i, vars.vect1, vars.vect2);
+			}
+		}
+		vars.release();
+	}
+
+	private void applyImpulse(ParticleStorage storage, int index, Vector3f tempOne, Vector3f tempTwo) {
+		float percentLife = storage.percentLife[index];
+		orbital.getValue3f(percentLife, storage.randomValue[index], emitter.getRandom(), tempOne);
+		linear.getValue3f(percentLife, storage.randomValue[index], emitter.getRandom(), tempTwo);
+
+		tempTwo.y += tempOne.x * Math.cos(8 * Math.PI * percentLife);
+		tempTwo.z += tempOne.x * Math.sin(8 * Math.PI * percentLife);
+
+		// Y
+		tempTwo.x += tempOne.y * Math.cos(8 * Math.PI * percentLife);
+		tempTwo.z += tempOne.y * Math.sin(8 * Math.PI * percentLife);
+
+		// Z
+		tempTwo.x += tempOne.z * Math.cos(8 * Math.PI * percentLife);
+		tempTwo.y += tempOne.z * Math.sin(8 * Math.PI * percentLife);
+		tempTwo.multLocal(strength);
+
+		int v = index * 3;
+		storage.velocity[v] = FastMath.interpolateLinear(magnitude, storage.velocity[v], tempTwo.x);
+		storage.velocity[v + 1] = FastMath.interpolateLinear(magnitude, storage.velocity[v + 1], tempTwo.y);
+		storage.velocity[v + 2] = FastMath.interpolateLinear(magnitude, storage.velocity[v + 2], tempTwo.z);
+	}
 	
+	@Override
+	public boolean isThreadSafe() {
+		return !linear.drawsRandom() && !orbital.drawsRandom();
+	}
+
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
+	}
+
 	public void initialize(ParticleData p) {
 		
 	}
@@ -94,6 +180,14 @@ public class ImpulseInfluencer extends ParticleInfluencer {
 		
 	}
 
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+	}
+
 	/**
 	 * The linear velocity we are pushing the particle towards
 	 * @return
@@ -33,9 +33,12 @@ package com.epaga.particles.influencers;
 
 import com.epaga.particles.Emitter;
 import com.jme3.export.*;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * Particle Influencer
@@ -91,6 +94,7 @@ public abstract class ParticleInfluencer implements Savable, Cloneable {
    * Priority controls the sort order of particle influencers. This allows certain influencers to take effect before others.
    *
    * @return The priority of this module. Higher priority takes place first.
+   * @see Emitter#refreshInfluencers()
    */
   public int getPriority() {
     return 0;
@@ -103,7 +107,12 @@ public abstract class ParticleInfluencer implements Savable, Cloneable {
    * @param enabled
    */
   public void setEnabled(boolean enabled) {
-    this.enabled = enabled;
+    if (this.enabled != enabled) {
+      this.enabled = enabled;
+      if (emitter != null) {
+        emitter.refreshInfluencers();
+      }
+    }
   }
 
   /**
@@ -132,6 +141,112 @@ public abstract class ParticleInfluencer implements Savable, Cloneable {
    */
   public abstract void update(ParticleData p, float tpf);
 
+  /**
+   * Supports Particle Storage
+   * Checks to see if this influencer works on particles held in a ParticleStorage directly. Influencers that
+   * return true should override the ParticleStorage versions of update, initialize and reset, the defaults copy
+   * the slot through a particle object. Influencers that keep per-particle state outside of the storage channels
+   * (trails, per-particle data) should return false.
+   *
+   * @return true if the ParticleStorage methods are implemented
+   */
+  public boolean supportsParticleStorage() {
+    return false;
+  }
+
+  /**
+   * Update
+   * Updates the particle in the given storage slot for the slice of time. The default loads the slot into the
+   * storage's shared particle, runs update(ParticleData, float) on it and stores it again.
+   * @param storage - the particle storage
+   * @param index - the slot of the particle to update
+   * @param tpf - the delta time for the last frame
+   */
+  public void update(ParticleStorage storage, int index, float tpf) {
+    // the shared particle may be used by several threads during a parallel update
+    synchronized (storage) {
+      ParticleData p = storage.load(index);
+      update(p, tpf);
+      storage.store(index, p);
+    }
+  }
+
+  /**
+   * Update
+   * Updates the active particles from start (inclusive) to end (exclusive) for the slice of time. The emitter
+   * runs each influencer over all of its particles before moving on to the next influencer. The default calls
+   * update(ParticleData, float) for every active particle, influencers can override it to process the range in
+   * a single tight loop.
+   * @param particles - the emitter's particles
+   * @param start - the first particle to update
+   * @param end - one past the last particle to update
+   * @param tpf - the delta time for the last frame
+   */
+  public void update(ParticleData[] particles, int start, int end, float tpf) {
+    for (int i = start; i < end; i++) {
+      ParticleData p = particles[i];
+      if (p.active) {
+        update(p, tpf);
+      }
+    }
+  }
+
+  /**
+   * Update
+   * Updates the active particles in the given storage slots for the slice of time, see
+   * update(ParticleData[], int, int, float). The default calls update(ParticleStorage, int, float) for every
+   * active slot.
+   * @param storage - the particle storage
+   * @param start - the first slot to update
+   * @param end - one past the last slot to update
+   * @param tpf - the delta time for the last frame
+   */
+  public void update(ParticleStorage storage, int start, int end, float tpf) {
+    boolean[] active = storage.active;
+    for (int i = start; i < end; i++) {
+      if (active[i]) {
+        update(storage, i, tpf);
+      }
+    }
+  }
+
+  /**
+   * Is Thread Safe
+   * Checks to see if update can be called for different particles from several threads at the same time. An
+   * influencer that writes to shared temp fields or its own state during update must return false, the emitter
+   * then runs it on the update thread after the parallel part of the update has finished. The same applies to
+   * influencers that draw from the emitter's random number generator, which is not thread safe.
+   *
+   * @return true if update can run concurrently for different particles
+   */
+  public boolean isThreadSafe() {
+    return false;
+  }
+
+  /**
+   * Is Expensive
+   * Flags influencers that cost noticeably more than the rest, like collision checks or trails. Emitters can
+   * skip them when far away from the camera, see EmitterLodLevel.
+   *
+   * @return true if the influencer may be skipped at lower levels of detail
+   */
+  public boolean isExpensive() {
+    return false;
+  }
+
+  /**
+   * Get Required Components
+   * Lists the optional per-particle components this influencer reads or writes. The emitter only allocates
+   * the components that one of its enabled influencers asks for, the rest stay null on every particle. The
+   * default asks for all of them so influencers written before the components were optional keep working,
+   * override it to save the memory.
+   *
+   * @return The components this influencer needs
+   */
+  public EnumSet<ParticleComponent> getRequiredComponents() {
+    return EnumSet.allOf(ParticleComponent.class);
+  }
+
   /**
    * Initialize
    * Sets up a particle as it is emitted
@@ -146,4 +261,34 @@ public abstract class ParticleInfluencer implements Savable, Cloneable {
    */
   public abstract void reset(ParticleData p);
 
+  /**
+   * Initialize
+   * Sets up the particle in the given storage slot as it is emitted. The default copies the slot through the
+   * storage's shared particle, see update(ParticleStorage, int, float).
+   * @param storage - the particle storage
+   * @param index - the slot of the particle to initialize
+   */
+  public void initialize(ParticleStorage storage, int index) {
+    synchronized (storage) {
+      ParticleData p = storage.load(index);
+      initialize(p);
+      storage.store(index, p);
+    }
+  }
+
+  /**
+   * Reset
+   * Resets the particle in the given storage slot. The default copies the slot through the storage's shared
+   * particle, see update(ParticleStorage, int, float).
+   * @param storage - the particle storage
+   * @param index - the slot of the particle to reset
+   */
+  public void reset(ParticleStorage storage, int index) {
+    synchronized (storage) {
+      ParticleData p = storage.load(index);
+      reset(p);
+      storage.store(index, p);
+    }
+  }
+
 }
\ No newline at end of file
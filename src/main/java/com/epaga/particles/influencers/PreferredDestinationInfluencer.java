@@ -38,10 +38,14 @@ import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
+import com.jme3.util.TempVars;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.epaga.particles.valuetypes.ValueType;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * PreferredDestinationInfluencer
@@ -58,20 +62,104 @@ public class PreferredDestinationInfluencer extends ParticleInfluencer {
 
 	private boolean worldPosition = true;
 
-	// temp variables
-	private Vector3f temp = new Vector3f();
-
 	public void update(ParticleData p, float tpf) {
 		if (enabled) {
-			float currChance = chance.getValue(p.percentLife, p.randomValue);
-			if (FastMath.rand.nextFloat() < currChance) {
-				float currWeight = weight.getValue(p.percentLife, p.randomValue);
-				preferredDestination.getValue3f(p.percentLife, p.randomValue, temp);
-				temp.subtractLocal(p.position);
+			float currChance = chance.getValue(p.percentLife, p.randomValue, emitter.getRandom());
+			if (p.nextRandom() < currChance) {
+				TempVars vars = TempVars.get();
+				steer(p, vars.vect1);
+				vars.release();
+			}
+		}
+	}
+
+	@Override
+	public void update(ParticleData[] particles, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		// one set of temp vars for the whole range rather than one per particle
+		TempVars vars = TempVars.get();
+		for (int i = start; i < end; i++) {
+			ParticleData p = particles[i];
+			if (!p.active) {
+				continue;
+			}
+			float currChance = chance.getValue(p.percentLife, p.randomValue, emitter.getRandom());
+			if (p.nextRandom() < currChance) {
+				steer(p, vars.vect1);
+			}
+		}
+		vars.release();
+	}
+
+	private void steer(ParticleData p, Vector3f temp) {
+		float currWeight = weight.getValue(p.percentLife, p.randomValue, emitter.getRandom());
+		preferredDestination.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), temp);
+		temp.subtractLocal(p.position);
+
+		p.velocity.interpolateLocal(temp, currWeight);
+	}
+
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+		if (enabled) {
+			float percentLife = storage.percentLife[index];
+			float randomValue = storage.randomValue[index];
+			float currChance = chance.getValue(percentLife, randomValue, emitter.getRandom());
+			if (storage.nextRandom(index) < currChance) {
+				TempVars vars = TempVars.get();
+				steer(storage, index, vars.vect1);
+				vars.release();
+			}
+		}
+	}
 
-				p.velocity.interpolateLocal(temp, currWeight);
+	@Override
+	public void update(ParticleStorage storage, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		TempVars vars = TempVars.get();
+		boolean[] active = storage.active;
+		for (int i = start; i < end; i++) {
+			if (!active[i]) {
+				continue;
+			}
+			float currChance = chance.getValue(storage.percentLife[i], storage.randomValue[i], emitter.getRandom());
+			if (storage.nextRandom(i) < currChance) {
+				steer(storage, i, vars.vect1);
 			}
 		}
+		vars.release();
+	}
+
+	private void steer(ParticleStorage storage, int index, Vector3f temp) {
+		float percentLife = storage.percentLife[index];
+		float randomValue = storage.randomValue[index];
+		float currWeight = weight.getValue(percentLife, randomValue, emitter.getRandom());
+		preferredDestination.getValue3f(percentLife, randomValue, emitter.getRandom(), temp);
+
+		int v = index * 3;
+		temp.subtractLocal(storage.position[v], storage.position[v + 1], storage.position[v + 2]);
+		storage.velocity[v] = FastMath.interpolateLinear(currWeight, storage.velocity[v], temp.x);
+		storage.velocity[v + 1] = FastMath.interpolateLinear(currWeight, storage.velocity[v + 1], temp.y);
+		storage.velocity[v + 2] = FastMath.interpolateLinear(currWeight, storage.velocity[v + 2], temp.z);
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return !preferredDestination.drawsRandom() && !weight.drawsRandom() && !chance.drawsRandom();
+	}
+
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
 	}
 
 	public void initialize(ParticleData p) {
@@ -82,6 +170,14 @@ public class PreferredDestinationInfluencer extends ParticleInfluencer {
 		
 	}
 
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+	}
+
 	public VectorValueType getPreferredDestination() {
 		return preferredDestination;
 	}
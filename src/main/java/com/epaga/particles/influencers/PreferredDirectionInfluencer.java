@@ -37,10 +37,13 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.math.Vector3f;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.epaga.particles.valuetypes.ValueType;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * PreferredDirectionInfluencer
@@ -61,10 +64,25 @@ public class PreferredDirectionInfluencer extends ParticleInfluencer {
 		
 	}
 
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+
+	}
+
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
+	}
+
 	public void initialize(ParticleData p) {
 		if (enabled) {
-			float currWeight = weight.getValue(p.percentLife, p.randomValue);
-			preferredDirection.getValue3f(p.percentLife, p.randomValue, temp);
+			float currWeight = weight.getValue(p.percentLife, p.randomValue, emitter.getRandom());
+			preferredDirection.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), temp);
 			p.velocity.interpolateLocal(temp, currWeight);
 		}
 	}
@@ -73,6 +91,22 @@ public class PreferredDirectionInfluencer extends ParticleInfluencer {
 		
 	}
 
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+		if (enabled) {
+			float currWeight = weight.getValue(storage.percentLife[index], storage.randomValue[index], emitter.getRandom());
+			preferredDirection.getValue3f(storage.percentLife[index], storage.randomValue[index], emitter.getRandom(), temp);
+			int v = index * 3;
+			storage.velocity[v] += (temp.x - storage.velocity[v]) * currWeight;
+			storage.velocity[v + 1] += (temp.y - storage.velocity[v + 1]) * currWeight;
+			storage.velocity[v + 2] += (temp.z - storage.velocity[v + 2]) * currWeight;
+		}
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+	}
+
 	public VectorValueType getPreferredDirection() {
 		return preferredDirection;
 	}
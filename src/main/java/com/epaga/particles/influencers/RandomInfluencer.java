@@ -37,9 +37,13 @@ import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
+import com.jme3.util.TempVars;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * Random Module
@@ -54,7 +58,6 @@ public class RandomInfluencer extends ParticleInfluencer {
   private float strength = 1;
 
   // Temp Variables
-  private transient Vector3f temp = new Vector3f();
   private transient Vector3f velocityStore = new Vector3f();
 
   @Override
@@ -66,20 +69,47 @@ public class RandomInfluencer extends ParticleInfluencer {
   @Override
   public void update(ParticleData p, float tpf) {
     if (enabled) {
-      if (FastMath.rand.nextFloat() > 1-(chance+tpf)) {
-        temp.set(FastMath.nextRandomFloat(),
-            FastMath.nextRandomFloat(),
-            FastMath.nextRandomFloat()
+      if (p.nextRandom() > 1-(chance+tpf)) {
+        TempVars vars = TempVars.get();
+        Vector3f temp = vars.vect1.set(p.nextRandom(),
+            p.nextRandom(),
+            p.nextRandom()
         );
         temp.multLocal(2f);
         temp.subtractLocal(1f, 1f, 1f);
         temp.multLocal(strength);
         temp.addLocal(p.position);
         p.position.interpolateLocal(temp, magnitude);
+        vars.release();
       }
     }
   }
 
+  @Override
+  public boolean supportsParticleStorage() {
+    return true;
+  }
+
+  @Override
+  public void update(ParticleStorage storage, int index, float tpf) {
+    if (enabled) {
+      if (storage.nextRandom(index) > 1-(chance+tpf)) {
+        int v = index * 3;
+        float x = storage.position[v];
+        float y = storage.position[v + 1];
+        float z = storage.position[v + 2];
+        storage.position[v] = FastMath.interpolateLinear(magnitude, x, x + (storage.nextRandom(index) * 2f - 1f) * strength);
+        storage.position[v + 1] = FastMath.interpolateLinear(magnitude, y, y + (storage.nextRandom(index) * 2f - 1f) * strength);
+        storage.position[v + 2] = FastMath.interpolateLinear(magnitude, z, z + (storage.nextRandom(index) * 2f - 1f) * strength);
+      }
+    }
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public float getChance() {
     return chance;
   }
@@ -104,6 +134,11 @@ public class RandomInfluencer extends ParticleInfluencer {
     this.strength = strength;
   }
 
+  @Override
+  public EnumSet<ParticleComponent> getRequiredComponents() {
+    return EnumSet.noneOf(ParticleComponent.class);
+  }
+
   @Override
   public void initialize(ParticleData p) {
 
@@ -114,6 +149,14 @@ public class RandomInfluencer extends ParticleInfluencer {
 
   }
 
+  @Override
+  public void initialize(ParticleStorage storage, int index) {
+  }
+
+  @Override
+  public void reset(ParticleStorage storage, int index) {
+  }
+
   @Override
   public void write(JmeExporter ex) throws IOException {
     super.write(ex);
@@ -37,9 +37,12 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.math.Vector3f;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * RotationLifetimeInfluencer
@@ -56,7 +59,7 @@ public class RotationLifetimeInfluencer extends ParticleInfluencer {
 
 	public void update(ParticleData p, float tpf) {
 		if (enabled) {
-			speedOverLifetime.getValue3f(p.percentLife, p.randomValue, temp);
+			speedOverLifetime.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), temp);
 
 			p.angles.x += temp.x*tpf;
 			p.angles.y += temp.y*tpf;
@@ -65,6 +68,28 @@ public class RotationLifetimeInfluencer extends ParticleInfluencer {
 		}
 	}
 
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+		if (enabled) {
+			speedOverLifetime.getValue3f(storage.percentLife[index], storage.randomValue[index], emitter.getRandom(), temp);
+
+			int v = index * 3;
+			storage.angles[v] += temp.x*tpf;
+			storage.angles[v + 1] += temp.y*tpf;
+			storage.angles[v + 2] += temp.z*tpf;
+		}
+	}
+
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
+	}
+
 	public void initialize(ParticleData p) {
 	}
 
@@ -72,6 +97,14 @@ public class RotationLifetimeInfluencer extends ParticleInfluencer {
 		
 	}
 
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+	}
+
 	public VectorValueType getSpeedOverLifetime() {
 		return speedOverLifetime;
 	}
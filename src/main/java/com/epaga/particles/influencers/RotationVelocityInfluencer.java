@@ -31,16 +31,20 @@
  */
 package com.epaga.particles.influencers;
 
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.epaga.particles.valuetypes.VectorValueType;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
+import com.jme3.math.FastMath;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * RotationVelocityInfluencer
@@ -64,7 +68,7 @@ public class RotationVelocityInfluencer extends ParticleInfluencer {
 
 			velocity /= velocityRange.y;
 
-			speedOverVelocity.getValue3f(velocity, p.randomValue, temp);
+			speedOverVelocity.getValue3f(velocity, p.randomValue, emitter.getRandom(), temp);
 
 
 			p.angles.x += temp.x*tpf;
@@ -74,6 +78,38 @@ public class RotationVelocityInfluencer extends ParticleInfluencer {
 		}
 	}
 
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+		if (enabled) {
+			int v = index * 3;
+			float vx = storage.velocity[v];
+			float vy = storage.velocity[v + 1];
+			float vz = storage.velocity[v + 2];
+
+			float velocity = FastMath.sqrt(vx * vx + vy * vy + vz * vz);
+			if (velocity < velocityRange.x) velocity = velocityRange.x;
+			if (velocity > velocityRange.y) velocity = velocityRange.y;
+
+			velocity /= velocityRange.y;
+
+			speedOverVelocity.getValue3f(velocity, storage.randomValue[index], emitter.getRandom(), temp);
+
+			storage.angles[v] += temp.x*tpf;
+			storage.angles[v + 1] += temp.y*tpf;
+			storage.angles[v + 2] += temp.z*tpf;
+		}
+	}
+
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
+	}
+
 	public void initialize(ParticleData p) {
 	}
 
@@ -81,6 +117,14 @@ public class RotationVelocityInfluencer extends ParticleInfluencer {
 		
 	}
 
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+	}
+
 	public VectorValueType getSpeedOverVelocity() {
 		return speedOverVelocity;
 	}
@@ -35,10 +35,13 @@ import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.epaga.particles.valuetypes.ValueType;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * Size Module
@@ -54,18 +57,89 @@ public class SizeInfluencer extends ParticleInfluencer {
 	@Override
 	public void update(ParticleData p, float tpf) {
 		if (enabled) {
-			p.size = p.startSize * sizeOverTime.getValue(p.percentLife, p.randomValue);
+			p.size = p.startSize * sizeOverTime.getValue(p.percentLife, p.randomValue, emitter.getRandom());
 		}
 	}
 
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+		if (enabled) {
+			storage.size[index] = storage.startSize[index] * sizeOverTime.getValue(storage.percentLife[index], storage.randomValue[index], emitter.getRandom());
+		}
+	}
+
+	@Override
+	public void update(ParticleData[] particles, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		if (sizeOverTime.getType() != ValueType.Type.CONSTANT) {
+			super.update(particles, start, end, tpf);
+			return;
+		}
+		// a constant size scale is the same for every particle
+		float scale = sizeOverTime.getValue(0, 0, emitter.getRandom());
+		for (int i = start; i < end; i++) {
+			ParticleData p = particles[i];
+			if (p.active) {
+				p.size = p.startSize * scale;
+			}
+		}
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int start, int end, float tpf) {
+		if (!enabled) {
+			return;
+		}
+		if (sizeOverTime.getType() != ValueType.Type.CONSTANT) {
+			super.update(storage, start, end, tpf);
+			return;
+		}
+		float scale = sizeOverTime.getValue(0, 0, emitter.getRandom());
+		boolean[] active = storage.active;
+		float[] size = storage.size;
+		float[] startSize = storage.startSize;
+		for (int i = start; i < end; i++) {
+			if (active[i]) {
+				size[i] = startSize[i] * scale;
+			}
+		}
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return !sizeOverTime.drawsRandom();
+	}
+
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
+	}
+
 	@Override
 	public void initialize(ParticleData p) {
-		p.size = p.startSize * sizeOverTime.getValue(0, p.randomValue);
+		p.size = p.startSize * sizeOverTime.getValue(0, p.randomValue, emitter.getRandom());
 	}
 
 	@Override
 	public void reset(ParticleData p){
-    p.size = p.startSize * sizeOverTime.getValue(0, p.randomValue);
+    p.size = p.startSize * sizeOverTime.getValue(0, p.randomValue, emitter.getRandom());
+	}
+
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+		storage.size[index] = storage.startSize[index] * sizeOverTime.getValue(0, storage.randomValue[index], emitter.getRandom());
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+		storage.size[index] = storage.startSize[index] * sizeOverTime.getValue(0, storage.randomValue[index], emitter.getRandom());
 	}
 
 	public ValueType getSizeOverTime() {
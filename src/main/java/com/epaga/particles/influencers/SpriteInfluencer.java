@@ -32,14 +32,17 @@
 package com.epaga.particles.influencers;
 
 import com.epaga.particles.Emitter;
+import com.epaga.particles.particle.ParticleAttributes;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
-import com.jme3.math.FastMath;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * Sprite Module
@@ -62,45 +65,76 @@ public class SpriteInfluencer extends ParticleInfluencer {
 	private boolean useRandomRow = false;
 	private int useRow = 0;
 
-	// temp or working variables
-	private int totalFrames;
-	private transient float currentInterval, targetInterval;
+	// per particle animation state
+	private transient int frameInterval = -1, frameDuration = -1, frameCol = -1, frameRow = -1;
 	
 	public void update(ParticleData p, float tpf) {
 		if (enabled) {
 			if (animate) {
-				currentInterval = (Float)p.getData("frameInterval");
-				currentInterval += tpf;
-				if (!cycle) {
-					targetInterval = (Float)p.getData("frameDuration");
-					
-				} else {
-					targetInterval = fixedDuration;
+				if (updateFrame(p.index, tpf)) {
+					ParticleAttributes attributes = emitter.getAttributes();
+					p.spriteCol = attributes.getInt(frameCol, p.index);
+					p.spriteRow = attributes.getInt(frameRow, p.index);
 				}
-				if (currentInterval >= targetInterval) {
-					updateFrame(p);
+			}
+		}
+	}
+
+	@Override
+	public boolean supportsParticleStorage() {
+		return true;
+	}
+
+	@Override
+	public void update(ParticleStorage storage, int index, float tpf) {
+		if (enabled) {
+			if (animate) {
+				if (updateFrame(index, tpf)) {
+					ParticleAttributes attributes = emitter.getAttributes();
+					storage.spriteCol[index] = attributes.getInt(frameCol, index);
+					storage.spriteRow[index] = attributes.getInt(frameRow, index);
 				}
-				p.setData("frameInterval", currentInterval);
 			}
 		}
 	}
-	
-	private void updateFrame(ParticleData p) {
-		p.spriteCol = (Integer)p.getData("frameCol")+1;
-		if (p.spriteCol == spriteCols) {
-			p.spriteCol = 0;
+
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * Advances the animation timer of the particle in the given slot, the current frame is kept in the frameCol
+	 * and frameRow channels
+	 *
+	 * @return true if the particle moved on to the next frame
+	 */
+	private boolean updateFrame(int index, float tpf) {
+		ParticleAttributes attributes = emitter.getAttributes();
+		float[] intervals = attributes.getFloatChannel(frameInterval);
+		float currentInterval = intervals[index] + tpf;
+		float targetInterval = cycle ? fixedDuration : attributes.getFloat(frameDuration, index);
+		if (currentInterval < targetInterval) {
+			intervals[index] = currentInterval;
+			return false;
+		}
+
+		int spriteCol = attributes.getInt(frameCol, index) + 1;
+		if (spriteCol == spriteCols) {
+			spriteCol = 0;
 
 			if (!renderByRows)  {
-				p.spriteRow = (Integer) p.getData("frameRow") + 1;
-				if (p.spriteRow == spriteRows)
-					p.spriteRow = 0;
-				p.setData("frameRow", p.spriteRow);
+				int spriteRow = attributes.getInt(frameRow, index) + 1;
+				if (spriteRow == spriteRows)
+					spriteRow = 0;
+				attributes.setInt(frameRow, index, spriteRow);
 			} else {
-				p.spriteRow = useRow;
+				attributes.setInt(frameRow, index, useRow);
 			}
 		}
-		p.setData("frameCol", p.spriteCol);
-		currentInterval -= targetInterval;
+		attributes.setInt(frameCol, index, spriteCol);
+		intervals[index] = currentInterval - targetInterval;
+		return true;
 	}
 
 	@Override
@@ -108,27 +142,38 @@ public class SpriteInfluencer extends ParticleInfluencer {
 		super.initializeInfluencer(emitter);
 
 		emitter.getMesh().setImagesXY(spriteCols, spriteRows);
+		ParticleAttributes attributes = emitter.getAttributes();
+		frameInterval = attributes.registerFloat("frameInterval");
+		frameDuration = attributes.registerFloat("frameDuration");
+		frameCol = attributes.registerInt("frameCol");
+		frameRow = attributes.registerInt("frameRow");
+	}
+
+	@Override
+	public EnumSet<ParticleComponent> getRequiredComponents() {
+		return EnumSet.noneOf(ParticleComponent.class);
 	}
 
 	@Override
 	public void initialize(ParticleData p) {
-		totalFrames = spriteCols*spriteRows;
+		int totalFrames = spriteCols*spriteRows;
 		if (useRandomImage) {
-			p.spriteCol = FastMath.nextRandomInt(1,spriteCols);
-			p.spriteRow = FastMath.nextRandomInt(1,spriteRows);
+			p.spriteCol = emitter.getRandom().nextInt(1,spriteCols);
+			p.spriteRow = emitter.getRandom().nextInt(1,spriteRows);
 		}
 		if (renderByRows) {
 			p.spriteRow = useRow;
 
 			if (useRandomRow) {
-				p.spriteRow = FastMath.nextRandomInt(0, spriteRows - 1);
+				p.spriteRow = emitter.getRandom().nextInt(0, spriteRows - 1);
 			}
 		}
 		if (animate) {
-			p.setData("frameInterval", 0f);
-			p.setData("frameDuration", p.startlife/(float)totalFrames);
-			p.setData("frameCol", p.spriteCol);
-			p.setData("frameRow", p.spriteRow);
+			ParticleAttributes attributes = emitter.getAttributes();
+			attributes.setFloat(frameInterval, p.index, 0f);
+			attributes.setFloat(frameDuration, p.index, p.startlife/(float)totalFrames);
+			attributes.setInt(frameCol, p.index, p.spriteCol);
+			attributes.setInt(frameRow, p.index, p.spriteRow);
 		}
 	}
 
@@ -138,6 +183,35 @@ public class SpriteInfluencer extends ParticleInfluencer {
 		p.spriteRow = 0; //FastMath.nextRandomInt(1,p.particles.getSpriteRowCount());
 	}
 
+	@Override
+	public void initialize(ParticleStorage storage, int index) {
+		int totalFrames = spriteCols*spriteRows;
+		if (useRandomImage) {
+			storage.spriteCol[index] = emitter.getRandom().nextInt(1,spriteCols);
+			storage.spriteRow[index] = emitter.getRandom().nextInt(1,spriteRows);
+		}
+		if (renderByRows) {
+			storage.spriteRow[index] = useRow;
+
+			if (useRandomRow) {
+				storage.spriteRow[index] = emitter.getRandom().nextInt(0, spriteRows - 1);
+			}
+		}
+		if (animate) {
+			ParticleAttributes attributes = emitter.getAttributes();
+			attributes.setFloat(frameInterval, index, 0f);
+			attributes.setFloat(frameDuration, index, storage.startLife[index]/(float)totalFrames);
+			attributes.setInt(frameCol, index, storage.spriteCol[index]);
+			attributes.setInt(frameRow, index, storage.spriteRow[index]);
+		}
+	}
+
+	@Override
+	public void reset(ParticleStorage storage, int index) {
+		storage.spriteCol[index] = 0;
+		storage.spriteRow[index] = 0;
+	}
+
 	/**
 	 * Particles will/will not use sprite animations
 	 * @param animate boolean
@@ -32,6 +32,7 @@
 package com.epaga.particles.influencers;
 
 import com.epaga.particles.Emitter;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
 import com.epaga.particles.particle.ParticleDataTrails;
 import com.epaga.particles.particle.ParticleTrailPoint;
@@ -47,6 +48,7 @@ import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.Iterator;
 
 /**
@@ -172,7 +174,7 @@ public class TrailInfluencer extends ParticleInfluencer {
       p.trailSegments.addLast(new ParticleTrailPoint(
           start ? p.initialPosition : p.position,
           p.velocity,
-          useParticleSize ? p.size : trailSize.getValue(0.0f, p.randomValue),
+          useParticleSize ? p.size : trailSize.getValue(0.0f, p.randomValue, emitter.getRandom()),
           p.color,
           p.startlife * trailLife));
 
@@ -192,18 +194,28 @@ public class TrailInfluencer extends ParticleInfluencer {
 
       // modulate size based on lifetime
       if (!useParticleSize) {
-        float newSize = trailSize.getValue(life, p.randomValue);
+        float newSize = trailSize.getValue(life, p.randomValue, emitter.getRandom());
         trailPoint.size = newSize;
       }
 
       // modulate color based on lifetime
       if (!useParticleColor) {
-        colorOverLifetime.getValueColor(life / maxLife, p.randomValue, trailPoint.color);
+        colorOverLifetime.getValueColor(life / maxLife, p.randomValue, emitter.getRandom(), trailPoint.color);
       }
     }
 
   }
 
+  @Override
+  public boolean isExpensive() {
+    return true;
+  }
+
+  @Override
+  public EnumSet<ParticleComponent> getRequiredComponents() {
+    return EnumSet.of(ParticleComponent.TRAIL);
+  }
+
   @Override
   public void initializeInfluencer(Emitter emitter) {
     super.initializeInfluencer(emitter);
@@ -37,9 +37,13 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.math.Vector3f;
+import com.jme3.util.TempVars;
+import com.epaga.particles.particle.ParticleComponent;
 import com.epaga.particles.particle.ParticleData;
+import com.epaga.particles.particle.ParticleStorage;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * VelocityInfluencer
@@ -51,19 +55,34 @@ import java.io.IOException;
  */
 public class VelocityInfluencer extends ParticleInfluencer {
 
-  private Vector3f tempOne = new Vector3f();
-  private Vector3f tempTwo = new Vector3f();
-  private Vector3f tempThree = new Vector3f();
-
   private VectorValueType linear = new VectorValueType(new Vector3f(0, 2, 0));
   private VectorValueType orbital = new VectorValueType(new Vector3f(0, 0, 0));
   private VectorValueType orbitalRotations = new VectorValueType(new Vector3f(8, 8, 8));
 
   @Override
   public void update(ParticleData p, float tpf) {
-    orbital.getValue3f(p.percentLife, p.randomValue, tempOne);
-    orbitalRotations.getValue3f(p.percentLife, p.randomValue, tempThree);
-    linear.getValue3f(p.percentLife, p.randomValue, tempTwo);
+    TempVars vars = TempVars.get();
+    updateVelocity(p, vars.vect1, vars.vect2, vars.vect3);
+    vars.release();
+  }
+
+  @Override
+  public void update(ParticleData[] particles, int start, int end, float tpf) {
+    // one set of temp vars for the whole range rather than one per particle
+    TempVars vars = TempVars.get();
+    for (int i = start; i < end; i++) {
+      ParticleData p = particles[i];
+      if (p.active) {
+        updateVelocity(p, vars.vect1, vars.vect2, vars.vect3);
+      }
+    }
+    vars.release();
+  }
+
+  private void updateVelocity(ParticleData p, Vector3f tempOne, Vector3f tempTwo, Vector3f tempThree) {
+    orbital.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), tempOne);
+    orbitalRotations.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), tempThree);
+    linear.getValue3f(p.percentLife, p.randomValue, emitter.getRandom(), tempTwo);
     tempOne.multLocal(p.initialVelocity);
     tempTwo.multLocal(p.initialVelocity);
     p.velocity.set(tempTwo);
@@ -80,8 +99,76 @@ public class VelocityInfluencer extends ParticleInfluencer {
     // Z
     p.velocity.x += tempOne.z * Math.cos(tempThree.z * Math.PI * p.percentLife);
     p.velocity.y += tempOne.z * Math.sin(tempThree.z * Math.PI * p.percentLife);
+  }
 
+  @Override
+  public boolean supportsParticleStorage() {
+    return true;
+  }
 
+  @Override
+  public void update(ParticleStorage storage, int index, float tpf) {
+    TempVars vars = TempVars.get();
+    updateVelocity(storage, index, vars.vect1, vars.vect2, vars.vect3);
+    vars.release();
+  }
+
+  @Override
+  public void update(ParticleStorage storage, int start, int end, float tpf) {
+    TempVars vars = TempVars.get();
+    boolean[] active = storage.active;
+    for (int i = start; i < end; i++) {
+      if (active[i]) {
+        updateVelocity(storage, i, vars.vect1, vars.vect2, vars.vect3);
+      }
+    }
+    vars.release();
+  }
+
+  private void updateVelocity(ParticleStorage storage, int index, Vector3f tempOne, Vector3f tempTwo,
+      Vector3f tempThree) {
+    float percentLife = storage.percentLife[index];
+    float randomValue = storage.randomValue[index];
+    orbital.getValue3f(percentLife, randomValue, emitter.getRandom(), tempOne);
+    orbitalRotations.getValue3f(percentLife, randomValue, emitter.getRandom(), tempThree);
+    linear.getValue3f(percentLife, randomValue, emitter.getRandom(), tempTwo);
+
+    int v = index * 3;
+    float ix = storage.initialVelocity[v];
+    float iy = storage.initialVelocity[v + 1];
+    float iz = storage.initialVelocity[v + 2];
+    tempOne.multLocal(ix, iy, iz);
+
+    float vx = tempTwo.x * ix;
+    float vy = tempTwo.y * iy;
+    float vz = tempTwo.z * iz;
+
+    // for orbital velocity we add velocity based on each plane
+    // X
+    vy += tempOne.x * Math.cos(tempThree.x * Math.PI * percentLife);
+    vz += tempOne.x * Math.sin(tempThree.x * Math.PI * percentLife);
+
+    // Y
+    vx += tempOne.y * Math.cos(tempThree.y * Math.PI * percentLife);
+    vz += tempOne.y * Math.sin(tempThree.y * Math.PI * percentLife);
+
+    // Z
+    vx += tempOne.z * Math.cos(tempThree.z * Math.PI * percentLife);
+    vy += tempOne.z * Math.sin(tempThree.z * Math.PI * percentLife);
+
+    storage.velocity[v] = vx;
+    storage.velocity[v + 1] = vy;
+    storage.velocity[v + 2] = vz;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return !linear.drawsRandom() && !orbital.drawsRandom() && !orbitalRotations.drawsRandom();
+  }
+
+  @Override
+  public EnumSet<ParticleComponent> getRequiredComponents() {
+    return EnumSet.of(ParticleComponent.INITIAL_VELOCITY);
   }
 
   public VectorValueType getLinear() {
@@ -116,6 +203,14 @@ public class VelocityInfluencer extends ParticleInfluencer {
   public void reset(ParticleData p) {
   }
 
+  @Override
+  public void initialize(ParticleStorage storage, int index) {
+  }
+
+  @Override
+  public void reset(ParticleStorage storage, int index) {
+  }
+
   @Override
   public int getPriority() {
     return 1000;
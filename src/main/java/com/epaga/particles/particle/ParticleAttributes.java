@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import java.util.Arrays;
+
+/**
+ * ParticleAttributes
+ * Extra per-particle values declared by influencers. An influencer registers a named float or int channel when
+ * it is initialized and gets back a handle, the values are kept in one primitive array per channel indexed by
+ * particle slot. Registering a name that already exists returns the existing handle so influencers can share
+ * a channel.
+ *
+ * @author Jeddic
+ */
+public class ParticleAttributes {
+
+  private final int capacity;
+
+  private String[] floatNames = new String[0];
+  private float[][] floatChannels = new float[0][];
+  private String[] intNames = new String[0];
+  private int[][] intChannels = new int[0][];
+
+  public ParticleAttributes(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Declares a float channel
+   *
+   * @param name The name of the channel
+   * @return The handle used to read and write the channel
+   */
+  public int registerFloat(String name) {
+    int handle = indexOf(floatNames, name);
+    if (handle < 0) {
+      handle = floatNames.length;
+      floatNames = Arrays.copyOf(floatNames, handle + 1);
+      floatNames[handle] = name;
+      floatChannels = Arrays.copyOf(floatChannels, handle + 1);
+      floatChannels[handle] = new float[capacity];
+    }
+    return handle;
+  }
+
+  /**
+   * Declares an int channel
+   *
+   * @param name The name of the channel
+   * @return The handle used to read and write the channel
+   */
+  public int registerInt(String name) {
+    int handle = indexOf(intNames, name);
+    if (handle < 0) {
+      handle = intNames.length;
+      intNames = Arrays.copyOf(intNames, handle + 1);
+      intNames[handle] = name;
+      intChannels = Arrays.copyOf(intChannels, handle + 1);
+      intChannels[handle] = new int[capacity];
+    }
+    return handle;
+  }
+
+  public float getFloat(int handle, int index) {
+    return floatChannels[handle][index];
+  }
+
+  public void setFloat(int handle, int index, float value) {
+    floatChannels[handle][index] = value;
+  }
+
+  public int getInt(int handle, int index) {
+    return intChannels[handle][index];
+  }
+
+  public void setInt(int handle, int index, int value) {
+    intChannels[handle][index] = value;
+  }
+
+  /**
+   * Returns the values of a float channel for direct access in tight loops
+   *
+   * @param handle The channel handle
+   * @return The channel values indexed by particle slot
+   */
+  public float[] getFloatChannel(int handle) {
+    return floatChannels[handle];
+  }
+
+  /**
+   * Returns the values of an int channel for direct access in tight loops
+   *
+   * @param handle The channel handle
+   * @return The channel values indexed by particle slot
+   */
+  public int[] getIntChannel(int handle) {
+    return intChannels[handle];
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Exchanges the values of two particle slots in every channel
+   *
+   * @param a The first particle slot
+   * @param b The second particle slot
+   */
+  public void swap(int a, int b) {
+    for (float[] channel : floatChannels) {
+      float t = channel[a];
+      channel[a] = channel[b];
+      channel[b] = t;
+    }
+    for (int[] channel : intChannels) {
+      int t = channel[a];
+      channel[a] = channel[b];
+      channel[b] = t;
+    }
+  }
+
+  private static int indexOf(String[] names, String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -32,19 +32,24 @@
 package com.epaga.particles.particle;
 
 import com.epaga.particles.Emitter;
+import com.epaga.particles.EmitterShape;
+import com.epaga.particles.ParticleRandom;
 import com.epaga.particles.influencers.ParticleInfluencer;
 import com.jme3.math.ColorRGBA;
-import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
 import com.epaga.particles.valuetypes.ValueType;
 
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * ParticleData
- * Info used to define a particle and it's attributes over time
+ * Info used to define a particle and it's attributes over time. The optional components, initialVelocity,
+ * randomOffset, emissionNormal, rotationSpeed and trailSegments, are null unless one of the emitter's
+ * influencers asks for them in ParticleInfluencer.getRequiredComponents(). Influencers that don't override it
+ * get all of them.
  *
  * @author t0neg0d
  * @author jme3
@@ -59,6 +64,10 @@ public class ParticleData {
    * Current particle position
    */
   public final Vector3f position = new Vector3f();
+  /**
+   * The particle position at the start of the last simulation step, used to interpolate fixed rate updates
+   */
+  public final Vector3f previousPosition = new Vector3f();
   /**
    * ParticleData color
    */
@@ -68,8 +77,19 @@ public class ParticleData {
    * The position of the particles when the particle was released.
    */
   public final Vector3f initialPosition = new Vector3f();
-  public final Vector3f initialVelocity = new Vector3f();
-  public final Vector3f randomOffset = new Vector3f();
+  /**
+   * The velocity the particle was emitted with. Only allocated for ParticleComponent.INITIAL_VELOCITY.
+   */
+  public Vector3f initialVelocity;
+  /**
+   * The random offset from the emission point. Only allocated for ParticleComponent.RANDOM_OFFSET.
+   */
+  public Vector3f randomOffset;
+  /**
+   * The direction the particle was emitted in, for mesh shapes the triangle normal. Only allocated for
+   * ParticleComponent.EMISSION_NORMAL.
+   */
+  public Vector3f emissionNormal;
   /**
    * The parent particle particles
    */
@@ -79,9 +99,18 @@ public class ParticleData {
    */
   public int index;
   /**
-   * Used for when we do random between two curve calculations
+   * Used for when we do random between two curve calculations. Derived from the spawn serial, it is the
+   * particle's first counter based random draw.
    */
   public float randomValue = 0.0f;
+  /**
+   * The serial number the particle was emitted with, keys the particle's random values
+   */
+  public long spawnSerial;
+  /**
+   * The index of the next counter based random draw
+   */
+  public int randomDraw;
   /**
    * The force at which the particle was emitted
    */
@@ -112,9 +141,10 @@ public class ParticleData {
    */
   public Vector3f angles = new Vector3f();
   /**
-   * ParticleData rotation angle speed per axis (in radians).
+   * ParticleData rotation angle speed per axis (in radians). Only allocated for
+   * ParticleComponent.ROTATION_SPEED.
    */
-  public Vector3f rotationSpeed = new Vector3f();
+  public Vector3f rotationSpeed;
 
   /**
    * The index of the particles shape's mesh triangle the particle was emitted
@@ -131,14 +161,15 @@ public class ParticleData {
   public boolean active = false;
 
   /**
-   * Used for particle trails
+   * Used for particle trails. Only allocated for ParticleComponent.TRAIL.
    */
-  public LinkedList<ParticleTrailPoint> trailSegments = new LinkedList<>();
+  public LinkedList<ParticleTrailPoint> trailSegments;
 
   /**
-   * A strage facility for per-particle data used by influencers
+   * A strage facility for per-particle data used by influencers, created on first use. Influencers that update
+   * values every frame should use the emitter's ParticleAttributes instead.
    */
-  Map<String, Object> data = new HashMap();
+  Map<String, Object> data;
 
   /**
    * Sets data to store with the particle
@@ -147,6 +178,9 @@ public class ParticleData {
    * @param data The data
    */
   public void setData(String key, Object data) {
+    if (this.data == null) {
+      this.data = new HashMap<>();
+    }
     this.data.put(key, data);
   }
 
@@ -157,23 +191,114 @@ public class ParticleData {
    * @return The data
    */
   public Object getData(String key) {
-    return this.data.get(key);
+    return data != null ? data.get(key) : null;
+  }
+
+  /**
+   * Allocates the optional components in the given set and drops the ones that are not in it. Components that
+   * are already allocated are kept as they are.
+   *
+   * @param components The components the particle needs
+   */
+  public void setComponents(Set<ParticleComponent> components) {
+    if (!components.contains(ParticleComponent.TRAIL)) {
+      trailSegments = null;
+    } else if (trailSegments == null) {
+      trailSegments = new LinkedList<>();
+    }
+    initialVelocity = component(components, ParticleComponent.INITIAL_VELOCITY, initialVelocity);
+    randomOffset = component(components, ParticleComponent.RANDOM_OFFSET, randomOffset);
+    rotationSpeed = component(components, ParticleComponent.ROTATION_SPEED, rotationSpeed);
+    boolean hadNormal = emissionNormal != null;
+    emissionNormal = component(components, ParticleComponent.EMISSION_NORMAL, emissionNormal);
+    if (!hadNormal && emissionNormal != null && active) {
+      // already flying, look the direction up from the shape once
+      emitter.getShape().setNext(triangleIndex);
+      emissionNormal.set(emitter.getShape().getNextDirection());
+    }
+  }
+
+  private static Vector3f component(Set<ParticleComponent> components, ParticleComponent component,
+                                    Vector3f current) {
+    if (!components.contains(component)) {
+      return null;
+    }
+    return current != null ? current : new Vector3f();
+  }
+
+  /**
+   * Returns a counter based random value for this particle. The value only depends on the emitter's random
+   * stream seed, the particle's spawn serial and the draw index, so it does not depend on the update order.
+   *
+   * @param draw The draw index
+   * @return A random float between 0 and 1
+   */
+  public float random(int draw) {
+    return ParticleRandom.hashFloat(emitter.getRandomStreamSeed(), spawnSerial, draw);
+  }
+
+  /**
+   * Returns the particle's next counter based random value
+   *
+   * @return A random float between 0 and 1
+   */
+  public float nextRandom() {
+    return random(randomDraw++);
   }
 
   public void update(float tpf) {
 
+    if (!updateLife(tpf)) {
+      reset();
+      return;
+    }
+    boolean skipExpensive = emitter.isSkippingExpensiveInfluencers();
+    for (ParticleInfluencer influencer : emitter.getInfluencers()) {
+      if (skipExpensive && influencer.isExpensive()) {
+        continue;
+      }
+      influencer.update(this, tpf);
+    }
+
+    integrate(tpf);
+  }
+
+  /**
+   * Returns the particle position between the last two simulation steps
+   *
+   * @param alpha How far to go from the previous position to the current one, 0 to 1
+   * @param store The vector to store the result in
+   * @return The interpolated position
+   */
+  public Vector3f getInterpolatedPosition(float alpha, Vector3f store) {
+    return store.set(previousPosition).interpolateLocal(position, alpha);
+  }
+
+  /**
+   * Ages the particle by the slice of time without resetting it. Also remembers the position the step
+   * started from.
+   *
+   * @param tpf The delta time for the last frame
+   * @return false if the particle reached the end of it's life and needs to be reset
+   */
+  public boolean updateLife(float tpf) {
+    previousPosition.set(position);
     if (!emitter.getUseStaticParticles()) {
       life -= tpf;
       if (life <= 0) {
-        reset();
-        return;
+        return false;
       }
       percentLife = 1.0f * (startlife - life) / startlife;
     }
-    for (ParticleInfluencer influencer : emitter.getInfluencerMap()) {
-      influencer.update(this, tpf);
-    }
+    return true;
+  }
 
+  /**
+   * Moves the particle along it's velocity for the slice of time
+   *
+   * @param tpf The delta time for the last frame
+   */
+  public void integrate(float tpf) {
     position.x += velocity.x * tpf;
     position.y += velocity.y * tpf;
     position.z += velocity.z * tpf;
@@ -183,35 +308,53 @@ public class ParticleData {
    * Called once per particle use when the particle is emitted
    */
   public void initialize(ValueType lifeMin, ValueType lifeMax) {
+    EmitterShape shape = emitter.getShape();
+    shape.setNext();
+    initialize(lifeMin, lifeMax, shape.getNextTranslation(), shape.getNextDirection(), shape.getIndex());
+  }
+
+  /**
+   * Called once per particle use when the particle is emitted from a point that was already picked from the
+   * emitter's shape, see EmitterShape.sample()
+   *
+   * @param emitPosition The point on the shape to emit from
+   * @param emitDirection The direction to emit in
+   * @param emitIndex The shape's index of the point, for mesh shapes the triangle
+   */
+  public void initialize(ValueType lifeMin, ValueType lifeMax, Vector3f emitPosition, Vector3f emitDirection,
+                         int emitIndex) {
     float blendAmount = emitter.getCurrentDuration() / emitter.getDuration();
+    ParticleRandom random = emitter.getRandom();
     emitter.incActiveParticleCount();
     active = true;
     percentLife = 0;
-    startSize = emitter.getStartSize().getValue(blendAmount, randomValue);
+    spawnSerial = emitter.nextSpawnSerial();
+    randomDraw = 0;
+    randomValue = nextRandom();
+    startSize = emitter.getStartSize().getValue(blendAmount, randomValue, random);
     size = startSize;
-    randomValue = FastMath.nextRandomFloat();
-    trailSegments.clear();
+    if (trailSegments != null) {
+      trailSegments.clear();
+    }
     //startlife = (emitter.getLifeMax() - emitter.getLifeMin()) * FastMath.nextRandomFloat() + emitter.getLifeMin();
-    float minLife = lifeMin.getValue(blendAmount, randomValue);
-    startlife = (lifeMax.getValue(blendAmount, randomValue) - minLife) * FastMath.nextRandomFloat() + minLife;
+    float minLife = lifeMin.getValue(blendAmount, randomValue, random);
+    startlife = (lifeMax.getValue(blendAmount, randomValue, random) - minLife) * random.nextFloat() + minLife;
     life = startlife;
-    float emitSpeed = emitter.getStartSpeed().getValue(blendAmount, randomValue);
-    emitter.getShape().setNext();
-    triangleIndex = emitter.getShape().getIndex();
-    if (!emitter.getUseRandomEmissionPoint()) {
-      position.set(
-              emitter.getShape().getNextTranslation());
-    } else {
-      randomOffset.set(emitter.getShape().getRandomTranslation());
-      position.set(
-              emitter.getShape().getNextTranslation().add(randomOffset));
+    float emitSpeed = emitter.getStartSpeed().getValue(blendAmount, randomValue, random);
+    triangleIndex = emitIndex;
+    position.set(emitPosition);
+    if (emitter.getUseRandomEmissionPoint()) {
+      Vector3f offset = emitter.getShape().getRandomTranslation();
+      if (randomOffset != null) {
+        randomOffset.set(offset);
+      }
+      position.addLocal(offset);
     }
 
-		velocity.set(
-			emitter.getShape().getNextDirection().x*emitSpeed,
-			emitter.getShape().getNextDirection().y*emitSpeed,
-			emitter.getShape().getNextDirection().z*emitSpeed
-		);
+    velocity.set(emitDirection).multLocal(emitSpeed);
+    if (emissionNormal != null) {
+      emissionNormal.set(emitDirection);
+    }
 
     if (!emitter.getParticlesFollowEmitter()) {
       emitter.getWorldRotation().mult(velocity, velocity);
@@ -222,17 +365,20 @@ public class ParticleData {
       initialPosition.set(position);
     }
 
-    initialVelocity.set(velocity);
+    if (initialVelocity != null) {
+      initialVelocity.set(velocity);
+    }
+    previousPosition.set(position);
     //velocity.set(force.clone());
 
 
-    emitter.getStartRotation().getValue3f(blendAmount, randomValue, angles);
+    emitter.getStartRotation().getValue3f(blendAmount, randomValue, random, angles);
 
     // set initial color
-    emitter.getStartColor().getValueColor(blendAmount, randomValue, startColor);
+    emitter.getStartColor().getValueColor(blendAmount, randomValue, random, startColor);
     color.set(startColor);
 
-    for (ParticleInfluencer influencer : emitter.getInfluencerMap()) {
+    for (ParticleInfluencer influencer : emitter.getInfluencers()) {
       influencer.initialize(this);
     }
   }
@@ -241,17 +387,22 @@ public class ParticleData {
    * Called once per particle use when the particle finishes it's life cycle
    */
   public void reset() {
+    boolean wasActive = active;
     active = false;
     position.zero();
     velocity.zero();
     //size = 0.0f;
-    trailSegments.clear();
-    if (emitter.getActiveParticleCount() > 0) {
+    if (trailSegments != null) {
+      trailSegments.clear();
+    }
+    if (wasActive && emitter.getActiveParticleCount() > 0) {
       emitter.decActiveParticleCount();
     }
-    for (ParticleInfluencer influencer : emitter.getInfluencerMap()) {
+    for (ParticleInfluencer influencer : emitter.getInfluencers()) {
       influencer.reset(this);
     }
-    emitter.setNextIndex(index);
+    if (wasActive) {
+      emitter.freeParticle(index);
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.epaga.particles.Emitter;
+import com.jme3.material.Material;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
+import com.jme3.scene.VertexBuffer.Usage;
+import com.jme3.util.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * ParticleDataInstancedMesh
+ *
+ * Draws every particle as an instance of a single quad. Instead of four vertices per particle only one compact
+ * record is uploaded per live particle:
+ *
+ * TexCoord2 - center x, y, z and size
+ * TexCoord3 - rotation around the facing direction and sprite frame (row * sprite columns + column)
+ * Color     - packed ABGR color
+ *
+ * The quad corners are expanded by the vertex shader, so the emitter has to use a material built from
+ * Effects/Particles/InstancedParticle.j3md or a material definition with the same inputs. The mesh keeps the
+ * BillboardLeft, BillboardUp, BillboardDirection, SpriteCols and SpriteRows parameters of the emitter's
+ * material up to date.
+ *
+ * Only the roll of a particle (angles.z) is kept, and the Velocity and Normal billboard modes face the camera
+ * because their facing directions are not part of the record.
+ *
+ * @author Jeddic
+ */
+public class ParticleDataInstancedMesh extends ParticleDataMesh {
+
+    private static final Vector3f FORWARD_DIR = new Vector3f(0, 0.8f, 0.2f);
+    private static final Vector3f FORWARD_UP = FORWARD_DIR.cross(Vector3f.UNIT_X);
+
+    private Emitter emitter;
+
+    private int imagesX = 1;
+    private int imagesY = 1;
+    private int instanceCount;
+
+    private Vector3f left = new Vector3f();
+    private Vector3f up = new Vector3f();
+    private Vector3f dir = new Vector3f();
+    private Vector3f particlePosition = new Vector3f();
+
+    @Override
+    public void initParticleData(Emitter emitter, int numParticles) {
+        setMode(Mode.Triangles);
+
+        this.emitter = emitter;
+        this.instanceCount = 0;
+
+        // the quad shared by all particles, x runs along the billboard's left and y along its up
+        VertexBuffer buf = getBuffer(VertexBuffer.Type.Position);
+        if (buf == null) {
+            FloatBuffer pb = BufferUtils.createFloatBuffer(
+                 1,  1, 0,
+                -1,  1, 0,
+                 1, -1, 0,
+                -1, -1, 0);
+            VertexBuffer pvb = new VertexBuffer(VertexBuffer.Type.Position);
+            pvb.setupData(Usage.Static, 3, Format.Float, pb);
+            setBuffer(pvb);
+
+            FloatBuffer tb = BufferUtils.createFloatBuffer(
+                0, 1,
+                1, 1,
+                0, 0,
+                1, 0);
+            VertexBuffer tvb = new VertexBuffer(VertexBuffer.Type.TexCoord);
+            tvb.setupData(Usage.Static, 2, Format.Float, tb);
+            setBuffer(tvb);
+
+            ShortBuffer ib = BufferUtils.createShortBuffer(new short[] {1, 0, 2, 1, 2, 3});
+            VertexBuffer ivb = new VertexBuffer(VertexBuffer.Type.Index);
+            ivb.setupData(Usage.Static, 3, Format.UnsignedShort, ib);
+            setBuffer(ivb);
+        }
+
+        // one record per particle, with room for the empty record drawn when no particle is alive
+        int capacity = Math.max(numParticles, 1);
+
+        // set centers and sizes
+        FloatBuffer cb = BufferUtils.createFloatBuffer(capacity * 4);
+        buf = getBuffer(VertexBuffer.Type.TexCoord2);
+        if (buf != null) {
+            buf.updateData(cb);
+        } else {
+            VertexBuffer cvb = new VertexBuffer(VertexBuffer.Type.TexCoord2);
+            cvb.setInstanced(true);
+            cvb.setupData(Usage.Stream, 4, Format.Float, cb);
+            setBuffer(cvb);
+        }
+
+        // set rotations and sprite frames
+        FloatBuffer rb = BufferUtils.createFloatBuffer(capacity * 2);
+        buf = getBuffer(VertexBuffer.Type.TexCoord3);
+        if (buf != null) {
+            buf.updateData(rb);
+        } else {
+            VertexBuffer rvb = new VertexBuffer(VertexBuffer.Type.TexCoord3);
+            rvb.setInstanced(true);
+            rvb.setupData(Usage.Stream, 2, Format.Float, rb);
+            setBuffer(rvb);
+        }
+
+        // set colors
+        ByteBuffer colb = BufferUtils.createByteBuffer(capacity * 4);
+        buf = getBuffer(VertexBuffer.Type.Color);
+        if (buf != null) {
+            buf.updateData(colb);
+        } else {
+            VertexBuffer colvb = new VertexBuffer(VertexBuffer.Type.Color);
+            colvb.setInstanced(true);
+            colvb.setupData(Usage.Stream, 4, Format.UnsignedByte, colb);
+            colvb.setNormalized(true);
+            setBuffer(colvb);
+        }
+
+        updateCounts();
+    }
+
+    @Override
+    public void setImagesXY(int imagesX, int imagesY) {
+        this.imagesX = imagesX;
+        this.imagesY = imagesY;
+    }
+
+    public int getSpriteCols() { return this.imagesX; }
+    public int getSpriteRows() { return this.imagesY; }
+
+    /**
+     * Returns the number of instance records written by the last update.
+     */
+    public int getInstanceRecordCount() {
+        return instanceCount;
+    }
+
+    @Override
+    public void updateParticleData(ParticleData[] particles, Camera cam, Matrix3f inverseRotation) {
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.TexCoord2);
+        FloatBuffer centers = (FloatBuffer) cvb.getData();
+
+        VertexBuffer rvb = getBuffer(VertexBuffer.Type.TexCoord3);
+        FloatBuffer frames = (FloatBuffer) rvb.getData();
+
+        VertexBuffer colvb = getBuffer(VertexBuffer.Type.Color);
+        ByteBuffer colors = (ByteBuffer) colvb.getData();
+
+        centers.clear();
+        frames.clear();
+        colors.clear();
+
+        int count = getParticleCount(particles.length);
+        float alpha = emitter.getInterpolation();
+        for (int i = 0; i < count; i++) {
+            ParticleData p = particles[i];
+            if (!p.active) {
+                // inactive particles are left out, only the live ones are drawn
+                continue;
+            }
+
+            Vector3f position = alpha < 1 ? p.getInterpolatedPosition(alpha, particlePosition) : p.position;
+            putInstance(centers, frames, colors, position.x, position.y, position.z, p.size, p.angles.z,
+                p.spriteCol, p.spriteRow, p.color.asIntABGR());
+        }
+
+        finishParticleData(cam, cvb, centers, rvb, frames, colvb, colors);
+    }
+
+    @Override
+    public boolean supportsParticleStorage() {
+        return true;
+    }
+
+    @Override
+    public void updateParticleData(ParticleStorage storage, Camera cam, Matrix3f inverseRotation) {
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.TexCoord2);
+        FloatBuffer centers = (FloatBuffer) cvb.getData();
+
+        VertexBuffer rvb = getBuffer(VertexBuffer.Type.TexCoord3);
+        FloatBuffer frames = (FloatBuffer) rvb.getData();
+
+        VertexBuffer colvb = getBuffer(VertexBuffer.Type.Color);
+        ByteBuffer colors = (ByteBuffer) colvb.getData();
+
+        centers.clear();
+        frames.clear();
+        colors.clear();
+
+        int count = getParticleCount(storage.getCapacity());
+        float alpha = emitter.getInterpolation();
+        for (int i = 0; i < count; i++) {
+            if (!storage.active[i]) {
+                continue;
+            }
+
+            int v = i * 3;
+            if (alpha < 1) {
+                storage.getInterpolatedPosition(i, alpha, particlePosition);
+            } else {
+                particlePosition.set(storage.position[v], storage.position[v + 1], storage.position[v + 2]);
+            }
+            putInstance(centers, frames, colors, particlePosition.x, particlePosition.y, particlePosition.z,
+                storage.size[i], storage.angles[v + 2], storage.spriteCol[i], storage.spriteRow[i],
+                storage.getColorABGR(i));
+        }
+
+        finishParticleData(cam, cvb, centers, rvb, frames, colvb, colors);
+    }
+
+    /**
+     * Returns how many particles need to be read, when the emitter packs particles only the active ones at
+     * the start of the array are used
+     */
+    private int getParticleCount(int capacity) {
+        return emitter.isPackParticles() ? Math.min(emitter.getActiveParticleCount(), capacity) : capacity;
+    }
+
+    private void putInstance(FloatBuffer centers, FloatBuffer frames, ByteBuffer colors, float x, float y, float z,
+                             float size, float rotation, int spriteCol, int spriteRow, int abgr) {
+        centers.put(x).put(y).put(z).put(size);
+        frames.put(rotation).put(spriteRow * imagesX + spriteCol);
+        colors.putInt(abgr);
+    }
+
+    private void finishParticleData(Camera cam, VertexBuffer cvb, FloatBuffer centers, VertexBuffer rvb,
+                                    FloatBuffer frames, VertexBuffer colvb, ByteBuffer colors) {
+        instanceCount = colors.position() / 4;
+        if (instanceCount == 0) {
+            // the renderer always draws at least one instance, make it an empty quad
+            putInstance(centers, frames, colors, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        centers.flip();
+        frames.flip();
+        colors.flip();
+
+        // force renderer to re-send data to GPU
+        cvb.updateData(centers);
+        rvb.updateData(frames);
+        colvb.updateData(colors);
+
+        // the number of instances drawn comes from the limits of the instanced buffers
+        updateCounts();
+
+        updateMaterial(cam);
+    }
+
+    /**
+     * Sets the billboard axes and sprite layout the vertex shader needs to expand the quads.
+     */
+    private void updateMaterial(Camera cam) {
+        Material material = emitter.getMaterial();
+        if (material == null) {
+            return;
+        }
+
+        switch (emitter.getBillboardMode()) {
+          case UNIT_X:
+            up.set(Vector3f.UNIT_Y);
+            left.set(Vector3f.UNIT_Z);
+            dir.set(Vector3f.UNIT_X);
+            break;
+          case UNIT_Y:
+            up.set(Vector3f.UNIT_Z);
+            left.set(Vector3f.UNIT_X);
+            dir.set(Vector3f.UNIT_Y);
+            break;
+          case UNIT_Z:
+            up.set(Vector3f.UNIT_X);
+            left.set(Vector3f.UNIT_Y);
+            dir.set(Vector3f.UNIT_Z);
+            break;
+          case UNIT_FORWARD:
+            up.set(FORWARD_UP);
+            left.set(Vector3f.UNIT_X);
+            dir.set(FORWARD_DIR);
+            break;
+          default:
+            up.set(cam.getUp());
+            left.set(cam.getLeft());
+            dir.set(cam.getDirection());
+            break;
+        }
+
+        material.setVector3("BillboardLeft", left);
+        material.setVector3("BillboardUp", up);
+        material.setVector3("BillboardDirection", dir);
+        material.setInt("SpriteCols", imagesX);
+        material.setInt("SpriteRows", imagesY);
+    }
+
+    @Override
+    public boolean usesSimulatedBound() {
+        return true;
+    }
+
+    @Override
+    public float getParticleExtent() {
+        // the quad corners are size along both the left and the up vector away from the particle
+        return FastMath.sqrt(2f);
+    }
+
+    @Override
+    public void extractTemplateFromMesh(Mesh mesh) {  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.epaga.particles.Emitter;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
+import com.jme3.scene.VertexBuffer.Usage;
+import com.jme3.util.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * ParticleDataInstancedTemplateMesh
+ *
+ * Draws the template mesh once per particle with hardware instancing. The mesh keeps a single copy of the
+ * template and only uploads a record per live particle: the particle's world transform in the InstanceData
+ * layout read by jME's Instancing.glsllib and a packed color in an instanced Color buffer.
+ *
+ * Use a material with UseInstancing set, like Common/MatDefs/Misc/Unshaded.j3md or
+ * Common/MatDefs/Light/Lighting.j3md. Set VertexColor (Unshaded) or UseVertexColor (Lighting) to tint the
+ * particles with their colors.
+ *
+ * @author Jeddic
+ */
+public class ParticleDataInstancedTemplateMesh extends ParticleDataTemplateMesh {
+
+  private Emitter emitter;
+  private int instanceCount;
+  private Vector3f particlePosition = new Vector3f();
+  private Vector3f particleVelocity = new Vector3f();
+  private Vector3f particleScale = new Vector3f();
+  private Quaternion particleRotation = new Quaternion();
+  private Matrix3f rotationMatrix = new Matrix3f();
+  private Transform worldTransform = new Transform();
+
+  @Override
+  public void initParticleData(Emitter emitter, int numParticles) {
+    setMode(Mesh.Mode.Triangles);
+
+    this.emitter = emitter;
+    this.instanceCount = 0;
+
+    // share the template's vertex data, every particle draws the same vertices
+    Mesh template = getTemplateMesh();
+    setTemplateBuffer(template, VertexBuffer.Type.Position);
+    setTemplateBuffer(template, VertexBuffer.Type.Normal);
+    setTemplateBuffer(template, VertexBuffer.Type.TexCoord);
+    setTemplateBuffer(template, VertexBuffer.Type.Index);
+
+    // one record per particle, with room for the empty record drawn when no particle is alive
+    int capacity = Math.max(numParticles, 1);
+
+    // set the world transforms and normal rotations
+    FloatBuffer tb = BufferUtils.createFloatBuffer(capacity * 16);
+    clearBuffer(VertexBuffer.Type.InstanceData);
+    VertexBuffer tvb = new VertexBuffer(VertexBuffer.Type.InstanceData);
+    tvb.setInstanced(true);
+    tvb.setupData(Usage.Stream, 16, Format.Float, tb);
+    setBuffer(tvb);
+
+    // set colors
+    ByteBuffer cb = BufferUtils.createByteBuffer(capacity * 4);
+    clearBuffer(VertexBuffer.Type.Color);
+    VertexBuffer cvb = new VertexBuffer(VertexBuffer.Type.Color);
+    cvb.setInstanced(true);
+    cvb.setupData(Usage.Stream, 4, Format.UnsignedByte, cb);
+    cvb.setNormalized(true);
+    setBuffer(cvb);
+
+    updateCounts();
+  }
+
+  private void setTemplateBuffer(Mesh template, VertexBuffer.Type type) {
+    clearBuffer(type);
+    VertexBuffer buf = template.getBuffer(type);
+    if (buf != null) {
+      setBuffer(buf);
+    }
+  }
+
+  /**
+   * Returns the number of instance records written by the last update.
+   */
+  public int getInstanceRecordCount() {
+    return instanceCount;
+  }
+
+  @Override
+  public void updateParticleData(ParticleData[] particles, Camera cam, Matrix3f inverseRotation) {
+    VertexBuffer tvb = getBuffer(VertexBuffer.Type.InstanceData);
+    FloatBuffer transforms = (FloatBuffer) tvb.getData();
+
+    VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+    ByteBuffer colors = (ByteBuffer) cvb.getData();
+
+    transforms.clear();
+    colors.clear();
+
+    updateWorldTransform();
+    int count = getParticleCount(particles.length);
+    float alpha = emitter.getInterpolation();
+    for (int i = 0; i < count; i++) {
+      ParticleData p = particles[i];
+      if (!p.active) {
+        // inactive particles are left out, only the live ones are drawn
+        continue;
+      }
+
+      Vector3f position = alpha < 1 ? p.getInterpolatedPosition(alpha, particlePosition) : p.position;
+      putInstance(transforms, colors, position, p.velocity, p.angles.x + p.angles.y + p.angles.z, p.size,
+          p.color.asIntABGR());
+    }
+
+    finishParticleData(tvb, transforms, cvb, colors);
+  }
+
+  @Override
+  public boolean supportsParticleStorage() {
+    return true;
+  }
+
+  @Override
+  public void updateParticleData(ParticleStorage storage, Camera cam, Matrix3f inverseRotation) {
+    VertexBuffer tvb = getBuffer(VertexBuffer.Type.InstanceData);
+    FloatBuffer transforms = (FloatBuffer) tvb.getData();
+
+    VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+    ByteBuffer colors = (ByteBuffer) cvb.getData();
+
+    transforms.clear();
+    colors.clear();
+
+    updateWorldTransform();
+    int count = getParticleCount(storage.getCapacity());
+    float alpha = emitter.getInterpolation();
+    for (int i = 0; i < count; i++) {
+      if (!storage.active[i]) {
+        continue;
+      }
+
+      int v = i * 3;
+      if (alpha < 1) {
+        storage.getInterpolatedPosition(i, alpha, particlePosition);
+      } else {
+        particlePosition.set(storage.position[v], storage.position[v + 1], storage.position[v + 2]);
+      }
+      particleVelocity.set(storage.velocity[v], storage.velocity[v + 1], storage.velocity[v + 2]);
+      putInstance(transforms, colors, particlePosition, particleVelocity,
+          storage.angles[v] + storage.angles[v + 1] + storage.angles[v + 2], storage.size[i],
+          storage.getColorABGR(i));
+    }
+
+    finishParticleData(tvb, transforms, cvb, colors);
+  }
+
+  /**
+   * Returns how many particles need to be read, when the emitter packs particles only the active ones at
+   * the start of the array are used
+   */
+  private int getParticleCount(int capacity) {
+    return emitter.isPackParticles() ? Math.min(emitter.getActiveParticleCount(), capacity) : capacity;
+  }
+
+  /**
+   * Instanced shaders replace the geometry's world matrix with the one in the record, so the records carry
+   * the transform of the particle geometry as well. It follows the emitter or ignores all transforms.
+   */
+  private void updateWorldTransform() {
+    if (emitter.getParticlesFollowEmitter()) {
+      worldTransform.set(emitter.getWorldTransform());
+    } else {
+      worldTransform.loadIdentity();
+    }
+  }
+
+  private void putInstance(FloatBuffer transforms, ByteBuffer colors, Vector3f position, Vector3f velocity,
+                           float angle, float size, int abgr) {
+    // the template is turned around the velocity by the sum of the angles, like the vertices of
+    // ParticleDataTemplateMesh
+    if (angle != 0 && velocity.lengthSquared() > 0) {
+      particleRotation.fromAngleAxis(angle, velocity);
+    } else {
+      particleRotation.loadIdentity();
+    }
+
+    worldTransform.getRotation().mult(particleRotation, particleRotation);
+    particleScale.set(worldTransform.getScale()).multLocal(size);
+    worldTransform.transformVector(position, particlePosition);
+    particleRotation.toRotationMatrix(rotationMatrix);
+
+    // columns of the world matrix, with the inverse of the normal rotation in the last row
+    transforms.put(rotationMatrix.get(0, 0) * particleScale.x)
+              .put(rotationMatrix.get(1, 0) * particleScale.x)
+              .put(rotationMatrix.get(2, 0) * particleScale.x)
+              .put(-particleRotation.getX());
+    transforms.put(rotationMatrix.get(0, 1) * particleScale.y)
+              .put(rotationMatrix.get(1, 1) * particleScale.y)
+              .put(rotationMatrix.get(2, 1) * particleScale.y)
+              .put(-particleRotation.getY());
+    transforms.put(rotationMatrix.get(0, 2) * particleScale.z)
+              .put(rotationMatrix.get(1, 2) * particleScale.z)
+              .put(rotationMatrix.get(2, 2) * particleScale.z)
+              .put(-particleRotation.getZ());
+    transforms.put(particlePosition.x)
+              .put(particlePosition.y)
+              .put(particlePosition.z)
+              .put(particleRotation.getW());
+
+    colors.putInt(abgr);
+  }
+
+  private void finishParticleData(VertexBuffer tvb, FloatBuffer transforms, VertexBuffer cvb, ByteBuffer colors) {
+    instanceCount = colors.position() / 4;
+    if (instanceCount == 0) {
+      // the renderer always draws at least one instance, scale it down to nothing
+      for (int i = 0; i < 16; i++) {
+        transforms.put(0);
+      }
+      colors.putInt(0);
+    }
+
+    transforms.flip();
+    colors.flip();
+
+    // force renderer to re-send data to GPU
+    tvb.updateData(transforms);
+    cvb.updateData(colors);
+
+    // the number of instances drawn comes from the limits of the instanced buffers
+    updateCounts();
+  }
+}
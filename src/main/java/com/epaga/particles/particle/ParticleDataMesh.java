@@ -36,6 +36,8 @@ import com.jme3.math.Matrix3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.Mesh;
 
+import java.util.EnumSet;
+
 /**
  * ParticleDataMesh
  *
@@ -43,6 +45,9 @@ import com.jme3.scene.Mesh;
  * @author Jeddic
  */
 public abstract class ParticleDataMesh extends Mesh {
+
+    // copies of the storage slots for meshes that only read particle objects
+    private ParticleData[] storageParticles;
 	
 	/**
 	 * The template mesh to use for defining a particle
@@ -70,4 +75,50 @@ public abstract class ParticleDataMesh extends Mesh {
      */
     public abstract void updateParticleData(ParticleData[] particles, Camera cam, Matrix3f inverseRotation);
 
+    /**
+     * Returns true if this mesh builds its visual data from a ParticleStorage directly. Meshes that return true
+     * should override updateParticleData(ParticleStorage, Camera, Matrix3f), the default copies the storage into
+     * particle objects first.
+     */
+    public boolean supportsParticleStorage() {
+        return false;
+    }
+
+    /**
+     * Update the particle visual data from a structure of arrays particle store. Typically called every frame.
+     */
+    public void updateParticleData(ParticleStorage storage, Camera cam, Matrix3f inverseRotation) {
+        int capacity = storage.getCapacity();
+        if (storageParticles == null || storageParticles.length != capacity) {
+            storageParticles = new ParticleData[capacity];
+            for (int i = 0; i < capacity; i++) {
+                ParticleData p = new ParticleData();
+                p.emitter = storage.emitter;
+                p.setComponents(EnumSet.of(ParticleComponent.INITIAL_VELOCITY, ParticleComponent.RANDOM_OFFSET,
+                    ParticleComponent.EMISSION_NORMAL));
+                storageParticles[i] = p;
+            }
+        }
+        for (int i = 0; i < capacity; i++) {
+            storage.load(i, storageParticles[i]);
+        }
+        updateParticleData(storageParticles, cam, inverseRotation);
+    }
+
+    /**
+     * Returns true if the bounds the emitter gathers while moving the particles contain every vertex of this
+     * mesh. Otherwise the emitter computes the bounds from the vertex data.
+     */
+    public boolean usesSimulatedBound() {
+        return false;
+    }
+
+    /**
+     * Returns how far the vertices of a particle of size 1 can reach from the particle's position. The emitter
+     * grows the simulated bounds by this times the largest particle size.
+     */
+    public float getParticleExtent() {
+        return 0;
+    }
+
 }
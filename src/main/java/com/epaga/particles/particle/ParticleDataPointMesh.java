@@ -73,12 +73,7 @@ public class ParticleDataPointMesh extends ParticleDataMesh {
         this.emitter = emitter;
 
         // set positions
-        // adding an extra one to make sure if the emitter is near the camera it gets updated
-        FloatBuffer pb = BufferUtils.createVector3Buffer(numParticles + 1);
-        Vector3f worldLoc = emitter.getWorldTranslation();
-        pb.put(numParticles * 3, worldLoc.x);
-        pb.put(numParticles * 3 + 1, worldLoc.y);
-        pb.put(numParticles * 3 + 2, worldLoc.z);
+        FloatBuffer pb = BufferUtils.createVector3Buffer(numParticles);
 
         //if the buffer is already set only update the data
         VertexBuffer buf = getBuffer(VertexBuffer.Type.Position);
@@ -151,33 +146,103 @@ public class ParticleDataPointMesh extends ParticleDataMesh {
         colors.rewind();
         sizes.rewind();
         texcoords.rewind();
-        for (int i = 0; i < particles.length; i++){
+        int count = getParticleCount(particles.length);
+        float alpha = emitter.getInterpolation();
+        for (int i = 0; i < count; i++){
             ParticleData p = particles[i];
-            temp.set(p.position);
-            if (emitter.getParticlesFollowEmitter()) {
-                temp.set(p.position);
+            if (alpha < 1) {
+                p.getInterpolatedPosition(alpha, temp);
             } else {
-                temp.set(p.position).subtractLocal(emitter.getWorldTranslation().subtract(p.initialPosition).divide(8f));
+                temp.set(p.position);
+            }
+            if (!emitter.getParticlesFollowEmitter()) {
+                temp.subtractLocal(emitter.getWorldTranslation().subtract(p.initialPosition).divide(8f));
                 //temp = emitter.getWorldRotation().inverse().multLocal(temp);
             }
 
-            positions.put(temp.x)
-                     .put(temp.y)
-                     .put(temp.z);
+            putParticle(positions, colors, sizes, texcoords, temp, p.size, p.spriteCol, p.spriteRow, p.color.asIntABGR());
+        }
+
+        finishParticleData(pvb, positions, cvb, colors, svb, sizes, tvb, texcoords);
+    }
 
-            sizes.put(p.size); // * worldSace);
-            colors.putInt(p.color.asIntABGR());
+    @Override
+    public boolean supportsParticleStorage() {
+        return true;
+    }
 
-            int imgX = p.spriteCol; //p.imageIndex % imagesX;
-            int imgY = p.spriteRow; //(p.imageIndex - imgX) / imagesY;
+    @Override
+    public void updateParticleData(ParticleStorage storage, Camera cam, Matrix3f inverseRotation) {
+        VertexBuffer pvb = getBuffer(VertexBuffer.Type.Position);
+        FloatBuffer positions = (FloatBuffer) pvb.getData();
 
-            float startX = ((float) imgX) / imagesX;
-            float startY = ((float) imgY) / imagesY;
-            float endX   = startX + (1f / imagesX);
-            float endY   = startY + (1f / imagesY);
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+        ByteBuffer colors = (ByteBuffer) cvb.getData();
+
+        VertexBuffer svb = getBuffer(VertexBuffer.Type.Size);
+        FloatBuffer sizes = (FloatBuffer) svb.getData();
+
+        VertexBuffer tvb = getBuffer(VertexBuffer.Type.TexCoord);
+        FloatBuffer texcoords = (FloatBuffer) tvb.getData();
+
+        // update data in vertex buffers
+        positions.rewind();
+        colors.rewind();
+        sizes.rewind();
+        texcoords.rewind();
+        int count = getParticleCount(storage.getCapacity());
+        float alpha = emitter.getInterpolation();
+        for (int i = 0; i < count; i++){
+            int v = i * 3;
+            if (alpha < 1) {
+                storage.getInterpolatedPosition(i, alpha, temp);
+            } else {
+                temp.set(storage.position[v], storage.position[v + 1], storage.position[v + 2]);
+            }
+            if (!emitter.getParticlesFollowEmitter()) {
+                Vector3f worldLoc = emitter.getWorldTranslation();
+                temp.x -= (worldLoc.x - storage.initialPosition[v]) / 8f;
+                temp.y -= (worldLoc.y - storage.initialPosition[v + 1]) / 8f;
+                temp.z -= (worldLoc.z - storage.initialPosition[v + 2]) / 8f;
+            }
 
-            texcoords.put(startX).put(startY).put(endX).put(endY);
+            putParticle(positions, colors, sizes, texcoords, temp, storage.size[i], storage.spriteCol[i],
+                storage.spriteRow[i], storage.getColorABGR(i));
         }
+
+        finishParticleData(pvb, positions, cvb, colors, svb, sizes, tvb, texcoords);
+    }
+
+    /**
+     * Returns how many particles need to be written, when the emitter packs particles only the active ones at
+     * the start of the array are used
+     */
+    private int getParticleCount(int capacity) {
+        return emitter.isPackParticles() ? Math.min(emitter.getActiveParticleCount(), capacity) : capacity;
+    }
+
+    private void putParticle(FloatBuffer positions, ByteBuffer colors, FloatBuffer sizes, FloatBuffer texcoords,
+                             Vector3f position, float size, int spriteCol, int spriteRow, int abgr) {
+        positions.put(position.x)
+                 .put(position.y)
+                 .put(position.z);
+
+        sizes.put(size); // * worldSace);
+        colors.putInt(abgr);
+
+        int imgX = spriteCol; //p.imageIndex % imagesX;
+        int imgY = spriteRow; //(p.imageIndex - imgX) / imagesY;
+
+        float startX = ((float) imgX) / imagesX;
+        float startY = ((float) imgY) / imagesY;
+        float endX   = startX + (1f / imagesX);
+        float endY   = startY + (1f / imagesY);
+
+        texcoords.put(startX).put(startY).put(endX).put(endY);
+    }
+
+    private void finishParticleData(VertexBuffer pvb, FloatBuffer positions, VertexBuffer cvb, ByteBuffer colors,
+                                    VertexBuffer svb, FloatBuffer sizes, VertexBuffer tvb, FloatBuffer texcoords) {
         positions.flip();
         colors.flip();
         sizes.flip();
@@ -188,7 +253,21 @@ public class ParticleDataPointMesh extends ParticleDataMesh {
         cvb.updateData(colors);
         svb.updateData(sizes);
         tvb.updateData(texcoords);
-		this.updateBound();
+        if (emitter.isPackParticles()) {
+            // points are drawn by vertex count, refresh it from the flipped buffers
+            updateCounts();
+        }
+    }
+
+    @Override
+    public boolean usesSimulatedBound() {
+        // points are pulled away from their particle when they do not follow the emitter
+        return emitter == null || emitter.getParticlesFollowEmitter();
+    }
+
+    @Override
+    public float getParticleExtent() {
+        return 1;
     }
 
 	@Override
@@ -31,6 +31,7 @@
  */
 package com.epaga.particles.particle;
 
+import com.jme3.math.FastMath;
 import com.jme3.math.Matrix3f;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
@@ -64,6 +65,7 @@ public class ParticleDataTemplateMesh extends ParticleDataMesh {
   private Vector3f up = new Vector3f(), tempUp = new Vector3f();
   private Vector3f dir = new Vector3f();
   private Vector3f tempV3 = new Vector3f();
+  private Vector3f particlePosition = new Vector3f();
   private Quaternion rotStore = new Quaternion();
   private Quaternion tempQ = new Quaternion();
   private Node tempN = new Node();
@@ -80,6 +82,8 @@ public class ParticleDataTemplateMesh extends ParticleDataMesh {
   private ShortBuffer finIndexes;
   private FloatBuffer finNormals;
   private FloatBuffer finColors;
+  // distance of the template vertex furthest away from the template's origin
+  private float templateRadius;
 
   @Override
   public void extractTemplateFromMesh(Mesh mesh) {
@@ -89,6 +93,15 @@ public class ParticleDataTemplateMesh extends ParticleDataMesh {
     templateIndexes = MeshUtils.getIndexBuffer(mesh);
     templateNormals = MeshUtils.getNormalsBuffer(mesh);
     templateColors = BufferUtils.createFloatBuffer(templateVerts.capacity() / 3 * 4);
+
+    float radiusSquared = 0;
+    for (int v = 0; v < templateVerts.capacity(); v += 3) {
+      float x = templateVerts.get(v);
+      float y = templateVerts.get(v + 1);
+      float z = templateVerts.get(v + 2);
+      radiusSquared = Math.max(radiusSquared, x * x + y * y + z * z);
+    }
+    templateRadius = FastMath.sqrt(radiusSquared);
   }
 
   public Mesh getTemplateMesh() {
@@ -101,11 +114,7 @@ public class ParticleDataTemplateMesh extends ParticleDataMesh {
 
     this.emitter = emitter;
 
-    this.finVerts = BufferUtils.createFloatBuffer(templateVerts.capacity() * numParticles + 3);
-    Vector3f worldLoc = emitter.getWorldTranslation();
-    finVerts.put(templateVerts.capacity() * numParticles, worldLoc.x);
-    finVerts.put(templateVerts.capacity() * numParticles + 1, worldLoc.y);
-    finVerts.put(templateVerts.capacity() * numParticles + 2, worldLoc.z);
+    this.finVerts = BufferUtils.createFloatBuffer(templateVerts.capacity() * numParticles);
 
     try {
       this.finCoords = BufferUtils.createFloatBuffer(templateCoords.capacity() * numParticles);
@@ -210,6 +219,7 @@ public class ParticleDataTemplateMesh extends ParticleDataMesh {
     //   colors.clear();
     //   texcoords.clear();
 
+    float alpha = emitter.getInterpolation();
     for (int i = 0; i < particles.length; i++) {
       ParticleData p = particles[i];
       int offset = templateVerts.capacity() * i;
@@ -220,6 +230,7 @@ public class ParticleDataTemplateMesh extends ParticleDataMesh {
         }
         continue;
       }
+      Vector3f position = alpha < 1 ? p.getInterpolatedPosition(alpha, particlePosition) : p.position;
       for (int x = 0; x < templateVerts.capacity(); x += 3) {
         tempV3.set(templateVerts.get(x), templateVerts.get(x + 1), templateVerts.get(x + 2));
         rotStore = tempQ.fromAngleAxis(p.angles.y, p.velocity);
@@ -232,7 +243,7 @@ public class ParticleDataTemplateMesh extends ParticleDataMesh {
         tempV3 = rotStore.mult(tempV3);
 
         tempV3.multLocal(p.size);
-        tempV3.addLocal(p.position);
+        tempV3.addLocal(position);
 
         finVerts.put(offset + x, tempV3.getX());
         finVerts.put(offset + x + 1, tempV3.getY());
@@ -302,7 +313,15 @@ public class ParticleDataTemplateMesh extends ParticleDataMesh {
     // force renderer to re-send data to GPU
     //    pvb.updateData(positions);
     //    cvb.updateData(colors);
+  }
 
-    updateBound();
+  @Override
+  public boolean usesSimulatedBound() {
+    return true;
+  }
+
+  @Override
+  public float getParticleExtent() {
+    return templateRadius;
   }
 }
\ No newline at end of file
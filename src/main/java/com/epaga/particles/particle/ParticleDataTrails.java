@@ -184,7 +184,7 @@ public class ParticleDataTrails extends ParticleDataMesh {
     int index = 0;
     for (int i = 0; i < particles.length; i++) {
       ParticleData p = particles[i];
-      if (p.life <= 0) {
+      if (p.life <= 0 || p.trailSegments == null) {
         continue;
       }
       // now draw the segments
@@ -35,7 +35,6 @@ import com.epaga.particles.Emitter;
 import com.jme3.bounding.BoundingBox;
 import com.jme3.math.FastMath;
 import com.jme3.math.Matrix3f;
-import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.Mesh;
@@ -56,7 +55,7 @@ import java.util.Iterator;
  * @author t0neg0d
  * @author Jeddic
  */
-public class ParticleDataTriMesh extends ParticleDataMesh {
+public class ParticleDataTriMesh extends ParticleDataMesh implements ParticleVertexWriter {
 
     private BoundingBox defaultArea = new BoundingBox(new Vector3f(), 1, 1, 1);
 
@@ -68,27 +67,39 @@ public class ParticleDataTriMesh extends ParticleDataMesh {
     private Vector3f up = new Vector3f(), tempUp = new Vector3f();
     private Vector3f dir = new Vector3f();
     private Vector3f tempV3 = new Vector3f();
-    private Quaternion rotStore = new Quaternion();
-    private Quaternion tempQ = new Quaternion();
+    private Vector3f particlePosition = new Vector3f();
+    private Vector3f particleVelocity = new Vector3f();
+    private Vector3f particleAngles = new Vector3f();
+    private Vector3f particleNormal = new Vector3f();
+    // the camera basis, read once per update for the Camera billboard mode
+    private Vector3f camUp = new Vector3f();
+    private Vector3f camLeft = new Vector3f();
+    private Vector3f camDir = new Vector3f();
+
+    private static final Vector3f FORWARD_DIR = new Vector3f(0, 0.8f, 0.2f);
+    private static final Vector3f FORWARD_UP = FORWARD_DIR.cross(Vector3f.UNIT_X);
     private Node tempN = new Node();
     private int imgX, imgY;
     private float startX, startY, endX, endY;
+    private int numParticles;
+    private int uploadedIndexCount;
+    // the vertex data, kept for writing particles while the emitter updates
+    private FloatBuffer writePositions;
+    private ByteBuffer writeColors;
+    private FloatBuffer writeTexCoords;
 	
     @Override
     public void initParticleData(Emitter emitter, int numParticles) {
         setMode(Mode.Triangles);
 
         this.emitter = emitter;
+        this.numParticles = numParticles;
+        this.uploadedIndexCount = 0;
 
 //        particlesCopy = new ParticleData[numParticles];
 
-        // set positions
-        // we need an extra particle so we can force the bounding box to contain us
-        FloatBuffer pb = BufferUtils.createVector3Buffer((numParticles + 1) * 4 );
-        Vector3f worldLoc = emitter.getWorldTranslation();
-        pb.put(numParticles * 12, worldLoc.x);
-        pb.put(numParticles * 12 + 1, worldLoc.y);
-        pb.put(numParticles * 12 + 2, worldLoc.z);
+        // set positions, the emitter keeps the bounds around itself so no extra vertex is needed
+        FloatBuffer pb = BufferUtils.createVector3Buffer(numParticles * 4);
 
         // if the buffer is already set only update the data
         VertexBuffer buf = getBuffer(VertexBuffer.Type.Position);
@@ -159,6 +170,10 @@ public class ParticleDataTriMesh extends ParticleDataMesh {
         }
         
         updateCounts();
+
+        writePositions = pb;
+        writeColors = cb;
+        writeTexCoords = tb;
     }
     
     @Override
@@ -190,132 +205,219 @@ public class ParticleDataTriMesh extends ParticleDataMesh {
         colors.clear();
         texcoords.clear();
         
-        for (int i = 0; i < particles.length; i++){
+        int count = getParticleCount(particles.length);
+        float alpha = emitter.getInterpolation();
+        setCameraBasis(cam);
+        for (int i = 0; i < count; i++){
             ParticleData p = particles[i];
             if (p.life == 0) {
-                positions.put(0).put(0).put(0);
-                positions.put(0).put(0).put(0);
-                positions.put(0).put(0).put(0);
-                positions.put(0).put(0).put(0);
+                putEmptyParticle(positions, colors, texcoords);
                 continue;
             }
-			
-            switch (emitter.getBillboardMode()) {
-              case Velocity:
-                up.set(p.velocity).crossLocal(Vector3f.UNIT_Y).normalizeLocal();
-                left.set(p.velocity).crossLocal(up).normalizeLocal();
-                dir.set(p.velocity);
-                break;
-              case Velocity_Z_Up:
-                up.set(p.velocity).crossLocal(Vector3f.UNIT_Y).normalizeLocal();
-                left.set(p.velocity).crossLocal(up).normalizeLocal();
-                dir.set(p.velocity);
-                rotStore = tempQ.fromAngleAxis(-90* FastMath.DEG_TO_RAD, left);
-                left = rotStore.mult(left);
-                up = rotStore.mult(up);
-                break;
-              case Normal:
-                emitter.getShape().setNext(p.triangleIndex);
-                tempV3.set(emitter.getShape().getNextDirection());
-                up.set(tempV3).crossLocal(Vector3f.UNIT_Y).normalizeLocal();
-                left.set(tempV3).crossLocal(up).normalizeLocal();
-                dir.set(tempV3);
-                break;
-              case Normal_Y_Up:
-                emitter.getShape().setNext(p.triangleIndex);
-                tempV3.set(emitter.getShape().getNextDirection());
-                up.set(Vector3f.UNIT_Y);
-                left.set(tempV3).crossLocal(up).normalizeLocal();
-                dir.set(tempV3);
-                break;
-              case Camera:
-                up.set(cam.getUp());
-                left.set(cam.getLeft());
-                dir.set(cam.getDirection());
-                break;
-              case UNIT_X:
-                up.set(Vector3f.UNIT_Y);
-                left.set(Vector3f.UNIT_Z);
-                dir.set(Vector3f.UNIT_X);
-                break;
-              case UNIT_Y:
-                up.set(Vector3f.UNIT_Z);
-                left.set(Vector3f.UNIT_X);
-                dir.set(Vector3f.UNIT_Y);
-                break;
-              case UNIT_Z:
-                up.set(Vector3f.UNIT_X);
-                left.set(Vector3f.UNIT_Y);
-                dir.set(Vector3f.UNIT_Z);
-                break;
-              case UNIT_FORWARD:
-                up.set(new Vector3f(0, 0.8f, 0.2f).crossLocal(Vector3f.UNIT_X));
-                left.set(Vector3f.UNIT_X);
-                dir.set(0, 0.8f, 0.2f);
-                break;
-            }
 
-            up.multLocal(p.size);
-            left.multLocal(p.size);
+            Vector3f position = alpha < 1 ? p.getInterpolatedPosition(alpha, particlePosition) : p.position;
+            putParticle(positions, colors, texcoords, position, p.velocity, p.angles, p.size,
+                p.emissionNormal, p.spriteCol, p.spriteRow, p.color.asIntABGR());
+        }
+
+        finishParticleData(pvb, positions, cvb, colors, tvb, texcoords, count);
+    }
+
+    @Override
+    public boolean supportsParticleStorage() {
+        return true;
+    }
+
+    @Override
+    public void updateParticleData(ParticleStorage storage, Camera cam, Matrix3f inverseRotation) {
+        VertexBuffer pvb = getBuffer(VertexBuffer.Type.Position);
+        FloatBuffer positions = (FloatBuffer) pvb.getData();
+
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+        ByteBuffer colors = (ByteBuffer) cvb.getData();
 
-            rotStore = tempQ.fromAngleAxis(p.angles.y, left);
-            left = rotStore.mult(left);
-            up = rotStore.mult(up);
+        VertexBuffer tvb = getBuffer(VertexBuffer.Type.TexCoord);
+        FloatBuffer texcoords = (FloatBuffer) tvb.getData();
 
-            rotStore = tempQ.fromAngleAxis(p.angles.x, up);
-            left = rotStore.mult(left);
-            up = rotStore.mult(up);
+        // update data in vertex buffers
+        positions.clear();
+        colors.clear();
+        texcoords.clear();
 
-            rotStore = tempQ.fromAngleAxis(p.angles.z, dir);
-            left = rotStore.mult(left);
-            up = rotStore.mult(up);
+        int count = getParticleCount(storage.getCapacity());
+        float alpha = emitter.getInterpolation();
+        setCameraBasis(cam);
+        for (int i = 0; i < count; i++){
+            if (storage.life[i] == 0) {
+                putEmptyParticle(positions, colors, texcoords);
+                continue;
+            }
 
-            if (emitter.getParticlesFollowEmitter()) {
-              tempV3.set(p.position);
+            int v = i * 3;
+            if (alpha < 1) {
+                storage.getInterpolatedPosition(i, alpha, particlePosition);
             } else {
-              tempV3.set(p.position);
-              //tempV3.set(p.position).subtractLocal(emitter.getWorldTranslation().subtract(p.initialPosition).divide(8f));
-              //tempV3 = particles.getNode().getWorldRotation().inverse().multLocal(tempV3);
+                particlePosition.set(storage.position[v], storage.position[v + 1], storage.position[v + 2]);
             }
+            particleVelocity.set(storage.velocity[v], storage.velocity[v + 1], storage.velocity[v + 2]);
+            particleAngles.set(storage.angles[v], storage.angles[v + 1], storage.angles[v + 2]);
+            particleNormal.set(storage.emissionNormal[v], storage.emissionNormal[v + 1], storage.emissionNormal[v + 2]);
 
-            positions.put(tempV3.x + left.x + up.x)
-                           .put(tempV3.y + left.y + up.y)
-                           .put(tempV3.z + left.z + up.z);
+            putParticle(positions, colors, texcoords, particlePosition, particleVelocity, particleAngles,
+                storage.size[i], particleNormal, storage.spriteCol[i], storage.spriteRow[i],
+                storage.getColorABGR(i));
+        }
 
-                  positions.put(tempV3.x - left.x + up.x)
-                           .put(tempV3.y - left.y + up.y)
-                           .put(tempV3.z - left.z + up.z);
+        finishParticleData(pvb, positions, cvb, colors, tvb, texcoords, count);
+    }
 
-                  positions.put(tempV3.x + left.x - up.x)
-                           .put(tempV3.y + left.y - up.y)
-                           .put(tempV3.z + left.z - up.z);
+    /**
+     * Returns how many particles need to be written, when the emitter packs particles only the active ones at
+     * the start of the array are used
+     */
+    private int getParticleCount(int capacity) {
+        return emitter.isPackParticles() ? Math.min(emitter.getActiveParticleCount(), capacity) : capacity;
+    }
 
-                  positions.put(tempV3.x - left.x - up.x)
-                           .put(tempV3.y - left.y - up.y)
-                           .put(tempV3.z - left.z - up.z);
+    private void putEmptyParticle(FloatBuffer positions, ByteBuffer colors, FloatBuffer texcoords) {
+        positions.put(0).put(0).put(0);
+        positions.put(0).put(0).put(0);
+        positions.put(0).put(0).put(0);
+        positions.put(0).put(0).put(0);
 
-            if (uniqueTexCoords){
-              imgX = p.spriteCol;
-              imgY = p.spriteRow;
+        // keep the other buffers lined up with the positions
+        colors.position(colors.position() + 16);
+        if (uniqueTexCoords) {
+          texcoords.position(texcoords.position() + 8);
+        }
+    }
 
-              startX = 1f/imagesX*imgX;
-              startY = 1f/imagesY*imgY;
-              endX   = startX + 1f/imagesX;
-              endY   = startY + 1f/imagesY;
+    private void setCameraBasis(Camera cam) {
+        camUp.set(cam.getUp());
+        camLeft.set(cam.getLeft());
+        camDir.set(cam.getDirection());
+    }
 
-              texcoords.put(startX).put(endY);
-              texcoords.put(endX).put(endY);
-              texcoords.put(startX).put(startY);
-              texcoords.put(endX).put(startY);
-            }
+    private void putParticle(FloatBuffer positions, ByteBuffer colors, FloatBuffer texcoords, Vector3f position, Vector3f velocity, Vector3f angles, float size,
+                             Vector3f normal, int spriteCol, int spriteRow, int abgr) {
+        switch (emitter.getBillboardMode()) {
+          case Velocity:
+            up.set(velocity).crossLocal(Vector3f.UNIT_Y).normalizeLocal();
+            left.set(velocity).crossLocal(up).normalizeLocal();
+            dir.set(velocity);
+            break;
+          case Velocity_Z_Up:
+            up.set(velocity).crossLocal(Vector3f.UNIT_Y).normalizeLocal();
+            left.set(velocity).crossLocal(up).normalizeLocal();
+            dir.set(velocity);
+            rotate(left, -FastMath.HALF_PI, up, null);
+            break;
+          case Normal:
+            // the emitter keeps the emission normal on the particles in the Normal modes
+            tempV3.set(normal);
+            up.set(tempV3).crossLocal(Vector3f.UNIT_Y).normalizeLocal();
+            left.set(tempV3).crossLocal(up).normalizeLocal();
+            dir.set(tempV3);
+            break;
+          case Normal_Y_Up:
+            tempV3.set(normal);
+            up.set(Vector3f.UNIT_Y);
+            left.set(tempV3).crossLocal(up).normalizeLocal();
+            dir.set(tempV3);
+            break;
+          case Camera:
+            up.set(camUp);
+            left.set(camLeft);
+            dir.set(camDir);
+            break;
+          case UNIT_X:
+            up.set(Vector3f.UNIT_Y);
+            left.set(Vector3f.UNIT_Z);
+            dir.set(Vector3f.UNIT_X);
+            break;
+          case UNIT_Y:
+            up.set(Vector3f.UNIT_Z);
+            left.set(Vector3f.UNIT_X);
+            dir.set(Vector3f.UNIT_Y);
+            break;
+          case UNIT_Z:
+            up.set(Vector3f.UNIT_X);
+            left.set(Vector3f.UNIT_Y);
+            dir.set(Vector3f.UNIT_Z);
+            break;
+          case UNIT_FORWARD:
+            up.set(FORWARD_UP);
+            left.set(Vector3f.UNIT_X);
+            dir.set(FORWARD_DIR);
+            break;
+        }
+
+        up.multLocal(size);
+        left.multLocal(size);
 
-            int abgr = p.color.asIntABGR();
-            colors.putInt(abgr);
-            colors.putInt(abgr);
-            colors.putInt(abgr);
-            colors.putInt(abgr);
+        // rotate around left, then up, then dir. Rotating a vector around itself does nothing, so only the
+        // first two rotations have a single vector to turn, and unrotated particles skip all of it.
+        if (angles.y != 0) {
+            rotate(left, angles.y, up, null);
+        }
+        if (angles.x != 0) {
+            rotate(up, angles.x, left, null);
+        }
+        if (angles.z != 0) {
+            rotate(dir, angles.z, left, up);
+        }
+
+        if (emitter.getParticlesFollowEmitter()) {
+          tempV3.set(position);
+        } else {
+          tempV3.set(position);
+          //tempV3.set(p.position).subtractLocal(emitter.getWorldTranslation().subtract(p.initialPosition).divide(8f));
+          //tempV3 = particles.getNode().getWorldRotation().inverse().multLocal(tempV3);
+        }
+
+        positions.put(tempV3.x + left.x + up.x)
+                       .put(tempV3.y + left.y + up.y)
+                       .put(tempV3.z + left.z + up.z);
+
+              positions.put(tempV3.x - left.x + up.x)
+                       .put(tempV3.y - left.y + up.y)
+                       .put(tempV3.z - left.z + up.z);
+
+              positions.put(tempV3.x + left.x - up.x)
+                       .put(tempV3.y + left.y - up.y)
+                       .put(tempV3.z + left.z - up.z);
+
+              positions.put(tempV3.x - left.x - up.x)
+                       .put(tempV3.y - left.y - up.y)
+                       .put(tempV3.z - left.z - up.z);
+
+        if (uniqueTexCoords){
+          imgX = spriteCol;
+          imgY = spriteRow;
+
+          startX = 1f/imagesX*imgX;
+          startY = 1f/imagesY*imgY;
+          endX   = startX + 1f/imagesX;
+          endY   = startY + 1f/imagesY;
+
+          texcoords.put(startX).put(endY);
+          texcoords.put(endX).put(endY);
+          texcoords.put(startX).put(startY);
+          texcoords.put(endX).put(startY);
+        }
+
+        colors.putInt(abgr);
+        colors.putInt(abgr);
+        colors.putInt(abgr);
+        colors.putInt(abgr);
+    }
+
+    private void finishParticleData(VertexBuffer pvb, FloatBuffer positions, VertexBuffer cvb, ByteBuffer colors,
+                                    VertexBuffer tvb, FloatBuffer texcoords, int count) {
+        if (emitter.isPackParticles()) {
+          finishPackedParticleData(pvb, positions, cvb, colors, tvb, texcoords, count);
+          return;
         }
-		
 	//	this.setBuffer(VertexBuffer.Type.Position, 3, positions);
         positions.clear();
         colors.clear();
@@ -329,11 +431,141 @@ public class ParticleDataTriMesh extends ParticleDataMesh {
         // force renderer to re-send data to GPU
         pvb.updateData(positions);
         cvb.updateData(colors);
-		
-		  updateBound();
+    }
+
+    /**
+     * Uploads only the first count particles and limits the index buffer so only those are drawn
+     */
+    private void finishPackedParticleData(VertexBuffer pvb, FloatBuffer positions, VertexBuffer cvb,
+                                          ByteBuffer colors, VertexBuffer tvb, FloatBuffer texcoords, int count) {
+        positions.flip();
+        colors.flip();
+        pvb.updateData(positions);
+        cvb.updateData(colors);
+        if (uniqueTexCoords) {
+          texcoords.flip();
+          tvb.updateData(texcoords);
+        } else {
+          texcoords.clear();
+        }
+
+        VertexBuffer ivb = getBuffer(VertexBuffer.Type.Index);
+        ShortBuffer indexes = (ShortBuffer) ivb.getData();
+        int indexCount = count * 6;
+        indexes.limit(indexCount);
+        // the renderer draws up to the limit of the index buffer, it only needs uploading again when it grows
+        if (indexCount > uploadedIndexCount) {
+          ivb.updateData(indexes);
+          uploadedIndexCount = indexCount;
+        }
+    }
+
+    /**
+     * Rotates a and b around the axis by the angle with Rodrigues' rotation formula, the same rotation
+     * Quaternion.fromAngleAxis builds but without temporary objects
+     *
+     * @param axis The axis to rotate around, does not need to be normalized
+     * @param angle The angle in radians
+     * @param a The first vector to rotate
+     * @param b The second vector to rotate, or null
+     */
+    private static void rotate(Vector3f axis, float angle, Vector3f a, Vector3f b) {
+        float lengthSquared = axis.lengthSquared();
+        if (lengthSquared == 0) {
+            return;
+        }
+        float invLength = FastMath.invSqrt(lengthSquared);
+        float kx = axis.x * invLength;
+        float ky = axis.y * invLength;
+        float kz = axis.z * invLength;
+        float sin = FastMath.sin(angle);
+        float cos = FastMath.cos(angle);
+        rotate(a, kx, ky, kz, sin, cos);
+        if (b != null) {
+            rotate(b, kx, ky, kz, sin, cos);
+        }
+    }
+
+    private static void rotate(Vector3f v, float kx, float ky, float kz, float sin, float cos) {
+        float x = v.x;
+        float y = v.y;
+        float z = v.z;
+        float dot = (kx * x + ky * y + kz * z) * (1 - cos);
+        v.x = x * cos + (ky * z - kz * y) * sin + kx * dot;
+        v.y = y * cos + (kz * x - kx * z) * sin + ky * dot;
+        v.z = z * cos + (kx * y - ky * x) * sin + kz * dot;
+    }
+
+    @Override
+    public boolean canWriteDuringUpdate() {
+        switch (emitter.getBillboardMode()) {
+          case UNIT_X:
+          case UNIT_Y:
+          case UNIT_Z:
+          case Velocity:
+            return true;
+          default:
+            return false;
+        }
+    }
+
+    @Override
+    public void writeParticle(int index, ParticleData p) {
+        // the emission normal is not used by these billboard modes
+        putParticle(seekPositions(index), seekColors(index), seekTexCoords(index), p.position, p.velocity,
+            p.angles, p.size, p.emissionNormal, p.spriteCol, p.spriteRow, p.color.asIntABGR());
+    }
+
+    @Override
+    public void writeParticle(int index, ParticleStorage storage) {
+        int v = index * 3;
+        particlePosition.set(storage.position[v], storage.position[v + 1], storage.position[v + 2]);
+        particleVelocity.set(storage.velocity[v], storage.velocity[v + 1], storage.velocity[v + 2]);
+        particleAngles.set(storage.angles[v], storage.angles[v + 1], storage.angles[v + 2]);
+        putParticle(seekPositions(index), seekColors(index), seekTexCoords(index), particlePosition,
+            particleVelocity, particleAngles, storage.size[index], null, storage.spriteCol[index],
+            storage.spriteRow[index], storage.getColorABGR(index));
+    }
+
+    @Override
+    public void writeEmptyParticle(int index) {
+        putEmptyParticle(seekPositions(index), seekColors(index), seekTexCoords(index));
+    }
 
-		  // this is needed because particles can be a ways from the emitter and new particles won't emit
-      //getBound().mergeLocal(defaultArea);
+    @Override
+    public void finishUpdateWrites() {
+        VertexBuffer pvb = getBuffer(VertexBuffer.Type.Position);
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+        VertexBuffer tvb = getBuffer(VertexBuffer.Type.TexCoord);
+        int count = getParticleCount(numParticles);
+        // finishing expects the buffers to sit just after the last written particle
+        finishParticleData(pvb, seekPositions(count), cvb, seekColors(count), tvb, seekTexCoords(count), count);
+    }
+
+    private FloatBuffer seekPositions(int index) {
+        writePositions.limit(writePositions.capacity()).position(index * 12);
+        return writePositions;
+    }
+
+    private ByteBuffer seekColors(int index) {
+        writeColors.limit(writeColors.capacity()).position(index * 16);
+        return writeColors;
+    }
+
+    private FloatBuffer seekTexCoords(int index) {
+        writeTexCoords.limit(writeTexCoords.capacity()).position(index * 8);
+        return writeTexCoords;
+    }
+
+    @Override
+    public boolean usesSimulatedBound() {
+        return true;
+    }
+
+    @Override
+    public float getParticleExtent() {
+        // the quad corners are size along both the left and the up vector away from the particle
+        return FastMath.sqrt(2f);
     }
 
 	@Override
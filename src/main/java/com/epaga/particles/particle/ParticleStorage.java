@@ -0,0 +1,526 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.epaga.particles.Emitter;
+import com.epaga.particles.EmitterShape;
+import com.epaga.particles.ParticleRandom;
+import com.epaga.particles.influencers.ParticleInfluencer;
+import com.epaga.particles.valuetypes.ValueType;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+import java.util.EnumSet;
+
+/**
+ * ParticleStorage
+ * Structure of arrays particle store. Every particle attribute is kept in a flat primitive channel
+ * indexed by particle slot so large emitters can be simulated without an object per particle.
+ *
+ * Vector channels are packed xyz (3 floats per particle) and color channels rgba (4 floats per particle).
+ *
+ * @author Jeddic
+ */
+public class ParticleStorage {
+
+  /**
+   * The parent particle emitter
+   */
+  public final Emitter emitter;
+
+  /**
+   * Current particle positions
+   */
+  public final float[] position;
+  /**
+   * Current particle velocities
+   */
+  public final float[] velocity;
+  /**
+   * Particle positions at the start of the last simulation step
+   */
+  public final float[] previousPosition;
+  /**
+   * The positions of the particles when they were released.
+   */
+  public final float[] initialPosition;
+  public final float[] initialVelocity;
+  public final float[] randomOffset;
+  /**
+   * The directions the particles were emitted in, see ParticleData.emissionNormal
+   */
+  public final float[] emissionNormal;
+  /**
+   * Particle rotation angle per axis (in radians).
+   */
+  public final float[] angles;
+  public final float[] startColor;
+  public final float[] color;
+
+  public final float[] startSize;
+  public final float[] size;
+  /**
+   * Remaining life, in seconds.
+   */
+  public final float[] life;
+  public final float[] startLife;
+  public final float[] percentLife;
+  /**
+   * The first counter based random draw of each particle, see ParticleData.randomValue
+   */
+  public final float[] randomValue;
+  public final long[] spawnSerial;
+  public final int[] randomDraw;
+
+  public final int[] triangleIndex;
+  public final int[] spriteCol;
+  public final int[] spriteRow;
+  public final boolean[] active;
+
+  private final int capacity;
+
+  // Used to hand a single slot to code that works on particle objects
+  private final ParticleData scratch = new ParticleData();
+  // Used while emitting a particle
+  private final Vector3f tempVector = new Vector3f();
+  private final ColorRGBA tempColor = new ColorRGBA();
+
+  public ParticleStorage(Emitter emitter, int capacity) {
+    this.emitter = emitter;
+    this.capacity = capacity;
+
+    position = new float[capacity * 3];
+    velocity = new float[capacity * 3];
+    previousPosition = new float[capacity * 3];
+    initialPosition = new float[capacity * 3];
+    initialVelocity = new float[capacity * 3];
+    randomOffset = new float[capacity * 3];
+    emissionNormal = new float[capacity * 3];
+    angles = new float[capacity * 3];
+    startColor = new float[capacity * 4];
+    color = new float[capacity * 4];
+
+    startSize = new float[capacity];
+    size = new float[capacity];
+    life = new float[capacity];
+    startLife = new float[capacity];
+    percentLife = new float[capacity];
+    randomValue = new float[capacity];
+    spawnSerial = new long[capacity];
+    randomDraw = new int[capacity];
+
+    triangleIndex = new int[capacity];
+    spriteCol = new int[capacity];
+    spriteRow = new int[capacity];
+    active = new boolean[capacity];
+
+    scratch.emitter = emitter;
+    // the storage keeps channels for these anyway, trails are not supported
+    scratch.setComponents(EnumSet.of(ParticleComponent.INITIAL_VELOCITY, ParticleComponent.RANDOM_OFFSET,
+        ParticleComponent.EMISSION_NORMAL));
+  }
+
+  /**
+   * Returns the number of particle slots in this storage
+   *
+   * @return The particle capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns a counter based random value for the particle in the given slot, see ParticleData.random(int)
+   *
+   * @param index The particle slot
+   * @param draw The draw index
+   * @return A random float between 0 and 1
+   */
+  public float random(int index, int draw) {
+    return ParticleRandom.hashFloat(emitter.getRandomStreamSeed(), spawnSerial[index], draw);
+  }
+
+  /**
+   * Returns the next counter based random value for the particle in the given slot
+   *
+   * @param index The particle slot
+   * @return A random float between 0 and 1
+   */
+  public float nextRandom(int index) {
+    return random(index, randomDraw[index]++);
+  }
+
+  /**
+   * Updates the particle in the given slot for the slice of time
+   *
+   * @param index The particle slot
+   * @param tpf The delta time for the last frame
+   * @return false if the particle reached the end of it's life and was reset
+   */
+  public boolean update(int index, float tpf) {
+    if (!updateLife(index, tpf)) {
+      reset(index);
+      return false;
+    }
+    boolean skipExpensive = emitter.isSkippingExpensiveInfluencers();
+    for (ParticleInfluencer influencer : emitter.getInfluencers()) {
+      if (skipExpensive && influencer.isExpensive()) {
+        continue;
+      }
+      influencer.update(this, index, tpf);
+    }
+
+    integrate(index, tpf);
+    return true;
+  }
+
+  /**
+   * Ages the particle in the given slot without resetting it. Also remembers the position the step started from.
+   *
+   * @param index The particle slot
+   * @param tpf The delta time for the last frame
+   * @return false if the particle reached the end of it's life and needs to be reset
+   */
+  public boolean updateLife(int index, float tpf) {
+    int v = index * 3;
+    previousPosition[v] = position[v];
+    previousPosition[v + 1] = position[v + 1];
+    previousPosition[v + 2] = position[v + 2];
+    if (!emitter.getUseStaticParticles()) {
+      life[index] -= tpf;
+      if (life[index] <= 0) {
+        return false;
+      }
+      percentLife[index] = (startLife[index] - life[index]) / startLife[index];
+    }
+    return true;
+  }
+
+  /**
+   * Moves the particle in the given slot along it's velocity
+   *
+   * @param index The particle slot
+   * @param tpf The delta time for the last frame
+   */
+  public void integrate(int index, float tpf) {
+    int v = index * 3;
+    position[v] += velocity[v] * tpf;
+    position[v + 1] += velocity[v + 1] * tpf;
+    position[v + 2] += velocity[v + 2] * tpf;
+  }
+
+  /**
+   * Returns the position of the given slot between the last two simulation steps
+   *
+   * @param index The particle slot
+   * @param alpha How far to go from the previous position to the current one, 0 to 1
+   * @param store The vector to store the result in
+   * @return The interpolated position
+   */
+  public Vector3f getInterpolatedPosition(int index, float alpha, Vector3f store) {
+    int v = index * 3;
+    return store.set(
+        FastMath.interpolateLinear(alpha, previousPosition[v], position[v]),
+        FastMath.interpolateLinear(alpha, previousPosition[v + 1], position[v + 1]),
+        FastMath.interpolateLinear(alpha, previousPosition[v + 2], position[v + 2]));
+  }
+
+  /**
+   * Called once per particle use when the particle in the given slot is emitted
+   *
+   * @param index The particle slot
+   */
+  public void initialize(int index, ValueType lifeMin, ValueType lifeMax) {
+    EmitterShape shape = emitter.getShape();
+    shape.setNext();
+    initialize(index, lifeMin, lifeMax, shape.getNextTranslation(), shape.getNextDirection(), shape.getIndex());
+  }
+
+  /**
+   * Called once per particle use when the particle in the given slot is emitted from a point that was already
+   * picked from the emitter's shape, see ParticleData.initialize(ValueType, ValueType, Vector3f, Vector3f, int)
+   *
+   * @param index The particle slot
+   */
+  public void initialize(int index, ValueType lifeMin, ValueType lifeMax, Vector3f emitPosition,
+                         Vector3f emitDirection, int emitIndex) {
+    // same steps and random draws as ParticleData.initialize, written straight into the channels
+    float blendAmount = emitter.getCurrentDuration() / emitter.getDuration();
+    ParticleRandom random = emitter.getRandom();
+    emitter.incActiveParticleCount();
+    int v = index * 3;
+    int c = index * 4;
+    active[index] = true;
+    percentLife[index] = 0;
+    spawnSerial[index] = emitter.nextSpawnSerial();
+    randomDraw[index] = 0;
+    float randomValue = nextRandom(index);
+    this.randomValue[index] = randomValue;
+    startSize[index] = emitter.getStartSize().getValue(blendAmount, randomValue, random);
+    size[index] = startSize[index];
+    float minLife = lifeMin.getValue(blendAmount, randomValue, random);
+    startLife[index] = (lifeMax.getValue(blendAmount, randomValue, random) - minLife) * random.nextFloat() + minLife;
+    life[index] = startLife[index];
+    float emitSpeed = emitter.getStartSpeed().getValue(blendAmount, randomValue, random);
+    triangleIndex[index] = emitIndex;
+
+    Vector3f pos = tempVector.set(emitPosition);
+    if (emitter.getUseRandomEmissionPoint()) {
+      Vector3f offset = emitter.getShape().getRandomTranslation();
+      put(randomOffset, v, offset.x, offset.y, offset.z);
+      pos.addLocal(offset);
+    }
+    put(emissionNormal, v, emitDirection.x, emitDirection.y, emitDirection.z);
+    if (!emitter.getParticlesFollowEmitter()) {
+      pos.addLocal(emitter.getWorldTranslation());
+    }
+    put(position, v, pos.x, pos.y, pos.z);
+    put(previousPosition, v, pos.x, pos.y, pos.z);
+    put(initialPosition, v, pos.x, pos.y, pos.z);
+
+    Vector3f vel = tempVector.set(emitDirection).multLocal(emitSpeed);
+    if (!emitter.getParticlesFollowEmitter()) {
+      emitter.getWorldRotation().mult(vel, vel);
+    }
+    put(velocity, v, vel.x, vel.y, vel.z);
+    put(initialVelocity, v, vel.x, vel.y, vel.z);
+
+    Vector3f rotation = emitter.getStartRotation().getValue3f(blendAmount, randomValue, random, tempVector);
+    put(angles, v, rotation.x, rotation.y, rotation.z);
+
+    // set initial color
+    ColorRGBA start = emitter.getStartColor().getValueColor(blendAmount, randomValue, random, tempColor);
+    startColor[c] = color[c] = start.r;
+    startColor[c + 1] = color[c + 1] = start.g;
+    startColor[c + 2] = color[c + 2] = start.b;
+    startColor[c + 3] = color[c + 3] = start.a;
+
+    for (ParticleInfluencer influencer : emitter.getInfluencers()) {
+      influencer.initialize(this, index);
+    }
+  }
+
+  /**
+   * Called once per particle use when the particle in the given slot finishes it's life cycle
+   *
+   * @param index The particle slot
+   */
+  public void reset(int index) {
+    boolean wasActive = active[index];
+    active[index] = false;
+    if (scratch.index == index) {
+      // a particle loaded through load() must not be stored back
+      scratch.active = false;
+    }
+    int v = index * 3;
+    put(position, v, 0, 0, 0);
+    put(velocity, v, 0, 0, 0);
+    if (wasActive && emitter.getActiveParticleCount() > 0) {
+      emitter.decActiveParticleCount();
+    }
+    for (ParticleInfluencer influencer : emitter.getInfluencers()) {
+      influencer.reset(this, index);
+    }
+    if (wasActive) {
+      // last, the emitter may swap another particle into the slot
+      emitter.freeParticle(index);
+    }
+  }
+
+  /**
+   * Exchanges the values of two particle slots. A particle currently loaded through load() follows the swap.
+   *
+   * @param a The first particle slot
+   * @param b The second particle slot
+   */
+  public void swap(int a, int b) {
+    if (a == b) {
+      return;
+    }
+    swap(position, a * 3, b * 3, 3);
+    swap(velocity, a * 3, b * 3, 3);
+    swap(previousPosition, a * 3, b * 3, 3);
+    swap(initialPosition, a * 3, b * 3, 3);
+    swap(initialVelocity, a * 3, b * 3, 3);
+    swap(randomOffset, a * 3, b * 3, 3);
+    swap(emissionNormal, a * 3, b * 3, 3);
+    swap(angles, a * 3, b * 3, 3);
+    swap(startColor, a * 4, b * 4, 4);
+    swap(color, a * 4, b * 4, 4);
+    swap(startSize, a, b, 1);
+    swap(size, a, b, 1);
+    swap(life, a, b, 1);
+    swap(startLife, a, b, 1);
+    swap(percentLife, a, b, 1);
+    swap(randomValue, a, b, 1);
+    long serial = spawnSerial[a]; spawnSerial[a] = spawnSerial[b]; spawnSerial[b] = serial;
+
+    int t = randomDraw[a]; randomDraw[a] = randomDraw[b]; randomDraw[b] = t;
+    t = triangleIndex[a]; triangleIndex[a] = triangleIndex[b]; triangleIndex[b] = t;
+    t = spriteCol[a]; spriteCol[a] = spriteCol[b]; spriteCol[b] = t;
+    t = spriteRow[a]; spriteRow[a] = spriteRow[b]; spriteRow[b] = t;
+    boolean act = active[a]; active[a] = active[b]; active[b] = act;
+
+    if (scratch.index == a) {
+      scratch.index = b;
+    } else if (scratch.index == b) {
+      scratch.index = a;
+    }
+  }
+
+  /**
+   * Copies the given slot into a shared ParticleData instance. The returned instance is reused by every call
+   * and does not carry trail segments or per-particle data.
+   *
+   * @param index The particle slot to read
+   * @return The shared particle filled with the slot's values
+   */
+  public ParticleData load(int index) {
+    return load(index, scratch);
+  }
+
+  /**
+   * Copies the given slot into a particle. Only the optional components the particle has allocated are copied.
+   *
+   * @param index The particle slot to read
+   * @param p The particle to fill
+   * @return The particle filled with the slot's values
+   */
+  public ParticleData load(int index, ParticleData p) {
+    int v = index * 3;
+    int c = index * 4;
+    p.index = index;
+    p.position.set(position[v], position[v + 1], position[v + 2]);
+    p.velocity.set(velocity[v], velocity[v + 1], velocity[v + 2]);
+    p.previousPosition.set(previousPosition[v], previousPosition[v + 1], previousPosition[v + 2]);
+    p.initialPosition.set(initialPosition[v], initialPosition[v + 1], initialPosition[v + 2]);
+    if (p.initialVelocity != null) {
+      p.initialVelocity.set(initialVelocity[v], initialVelocity[v + 1], initialVelocity[v + 2]);
+    }
+    if (p.randomOffset != null) {
+      p.randomOffset.set(randomOffset[v], randomOffset[v + 1], randomOffset[v + 2]);
+    }
+    if (p.emissionNormal != null) {
+      p.emissionNormal.set(emissionNormal[v], emissionNormal[v + 1], emissionNormal[v + 2]);
+    }
+    p.angles.set(angles[v], angles[v + 1], angles[v + 2]);
+    p.startColor.set(startColor[c], startColor[c + 1], startColor[c + 2], startColor[c + 3]);
+    p.color.set(color[c], color[c + 1], color[c + 2], color[c + 3]);
+    p.startSize = startSize[index];
+    p.size = size[index];
+    p.life = life[index];
+    p.startlife = startLife[index];
+    p.percentLife = percentLife[index];
+    p.randomValue = randomValue[index];
+    p.spawnSerial = spawnSerial[index];
+    p.randomDraw = randomDraw[index];
+    p.triangleIndex = triangleIndex[index];
+    p.spriteCol = spriteCol[index];
+    p.spriteRow = spriteRow[index];
+    p.active = active[index];
+    return p;
+  }
+
+  /**
+   * Writes the values of the given particle into a slot
+   *
+   * @param index The particle slot to write
+   * @param p The particle values to store
+   */
+  public void store(int index, ParticleData p) {
+    int v = index * 3;
+    int c = index * 4;
+    put(position, v, p.position.x, p.position.y, p.position.z);
+    put(velocity, v, p.velocity.x, p.velocity.y, p.velocity.z);
+    put(previousPosition, v, p.previousPosition.x, p.previousPosition.y, p.previousPosition.z);
+    put(initialPosition, v, p.initialPosition.x, p.initialPosition.y, p.initialPosition.z);
+    if (p.initialVelocity != null) {
+      put(initialVelocity, v, p.initialVelocity.x, p.initialVelocity.y, p.initialVelocity.z);
+    }
+    if (p.randomOffset != null) {
+      put(randomOffset, v, p.randomOffset.x, p.randomOffset.y, p.randomOffset.z);
+    }
+    if (p.emissionNormal != null) {
+      put(emissionNormal, v, p.emissionNormal.x, p.emissionNormal.y, p.emissionNormal.z);
+    }
+    put(angles, v, p.angles.x, p.angles.y, p.angles.z);
+    startColor[c] = p.startColor.r;
+    startColor[c + 1] = p.startColor.g;
+    startColor[c + 2] = p.startColor.b;
+    startColor[c + 3] = p.startColor.a;
+    color[c] = p.color.r;
+    color[c + 1] = p.color.g;
+    color[c + 2] = p.color.b;
+    color[c + 3] = p.color.a;
+    startSize[index] = p.startSize;
+    size[index] = p.size;
+    life[index] = p.life;
+    startLife[index] = p.startlife;
+    percentLife[index] = p.percentLife;
+    randomValue[index] = p.randomValue;
+    spawnSerial[index] = p.spawnSerial;
+    randomDraw[index] = p.randomDraw;
+    triangleIndex[index] = p.triangleIndex;
+    spriteCol[index] = p.spriteCol;
+    spriteRow[index] = p.spriteRow;
+    active[index] = p.active;
+  }
+
+  /**
+   * Returns the color of the given slot packed the same way as ColorRGBA.asIntABGR()
+   *
+   * @param index The particle slot
+   * @return The packed color
+   */
+  public int getColorABGR(int index) {
+    int c = index * 4;
+    return (((int) (color[c + 3] * 255) & 0xFF) << 24)
+        | (((int) (color[c + 2] * 255) & 0xFF) << 16)
+        | (((int) (color[c + 1] * 255) & 0xFF) << 8)
+        | (((int) (color[c] * 255) & 0xFF));
+  }
+
+  private static void swap(float[] channel, int a, int b, int size) {
+    for (int i = 0; i < size; i++) {
+      float t = channel[a + i];
+      channel[a + i] = channel[b + i];
+      channel[b + i] = t;
+    }
+  }
+
+  private static void put(float[] channel, int offset, float x, float y, float z) {
+    channel[offset] = x;
+    channel[offset + 1] = y;
+    channel[offset + 2] = z;
+  }
+}
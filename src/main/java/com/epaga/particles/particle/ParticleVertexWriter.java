@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+/**
+ * ParticleVertexWriter
+ * Implemented by particle meshes whose vertices can be written particle by particle while the emitter moves the
+ * particles, instead of in a second pass when rendering. See Emitter.setWriteDuringUpdate().
+ *
+ * @author Jeddic
+ */
+public interface ParticleVertexWriter {
+
+  /**
+   * Returns true if the particle vertices do not depend on the camera with the emitter's current settings, so
+   * they can be written during the update
+   *
+   * @return true if the vertices can be written now
+   */
+  boolean canWriteDuringUpdate();
+
+  /**
+   * Writes the vertices of a single particle into the mesh buffers during the emitter's update.
+   *
+   * @param index The particle index
+   * @param p The particle
+   */
+  void writeParticle(int index, ParticleData p);
+
+  /**
+   * Writes the vertices of a particle storage slot into the mesh buffers during the emitter's update.
+   *
+   * @param index The particle slot
+   * @param storage The particle storage
+   */
+  void writeParticle(int index, ParticleStorage storage);
+
+  /**
+   * Collapses the vertices of an inactive particle during the emitter's update.
+   *
+   * @param index The particle index
+   */
+  void writeEmptyParticle(int index);
+
+  /**
+   * Uploads the vertices written during the emitter's update, called in place of updateParticleData.
+   */
+  void finishUpdateWrites();
+}
@@ -31,9 +31,11 @@
  */
 package com.epaga.particles.valuetypes;
 
+import com.epaga.particles.ParticleRandom;
 import com.jme3.export.*;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.FastMath;
+import com.jme3.util.TempVars;
 
 import java.io.IOException;
 
@@ -130,23 +132,61 @@ public class ColorValueType implements Savable, Cloneable {
     return type;
   }
 
+  /**
+   * Returns true if reading a value draws from a random number generator rather than
+   * depending only on the time and the particle's random value
+   *
+   * @return True if the value draws new random numbers
+   */
+  public boolean drawsRandom() {
+    return type == Type.RANDOM_COLOR || type == Type.RANDOM_BETWEEN_COLORS;
+  }
+
   public ColorRGBA getValueColor(float time, float particleRandom, ColorRGBA store) {
+    return getValueColor(time, particleRandom, null, store);
+  }
+
+  /**
+   * Same as getValueColor(float, float, ColorRGBA) but random values are drawn from the given generator
+   *
+   * @param time - How far along the particles lifecycle is 0-1
+   * @param particleRandom - Generated every time a particle is born for calculations like between two gradients
+   * @param random - The generator used by the random types, FastMath is used when null
+   * @param store - Where to store the result, a new color is created when null
+   * @return The color
+   */
+  public ColorRGBA getValueColor(float time, float particleRandom, ParticleRandom random, ColorRGBA store) {
     ColorRGBA output = store == null ? new ColorRGBA() : store;
 
     switch (type) {
       case CONSTANT: output.set(color); break;
-      case RANDOM_COLOR: output.set(ColorRGBA.randomColor()); break;
+      case RANDOM_COLOR:
+        if (random != null) {
+          output.set(random.nextFloat(), random.nextFloat(), random.nextFloat(), 1.0f);
+        } else {
+          output.set(ColorRGBA.randomColor());
+        }
+        break;
       case GRADIENT: gradient.getValueColor(time, output); break;
       case RANDOM_BETWEEN_GRADIENTS:
+        TempVars vars = TempVars.get();
         gradient.getValueColor(time, output);
-        gradientTwo.getValueColor(time, store);
-        output.interpolateLocal(store, particleRandom);
+        gradientTwo.getValueColor(time, vars.color);
+        output.interpolateLocal(vars.color, particleRandom);
+        vars.release();
         break;
       case RANDOM_BETWEEN_COLORS:
-        output.r = FastMath.interpolateLinear(FastMath.nextRandomFloat(), color.r, colorTwo.r);
-        output.g = FastMath.interpolateLinear(FastMath.nextRandomFloat(), color.g, colorTwo.g);
-        output.b = FastMath.interpolateLinear(FastMath.nextRandomFloat(), color.b, colorTwo.b);
-        output.a = FastMath.interpolateLinear(FastMath.nextRandomFloat(), color.a, colorTwo.a);
+        if (random != null) {
+          output.r = FastMath.interpolateLinear(random.nextFloat(), color.r, colorTwo.r);
+          output.g = FastMath.interpolateLinear(random.nextFloat(), color.g, colorTwo.g);
+          output.b = FastMath.interpolateLinear(random.nextFloat(), color.b, colorTwo.b);
+          output.a = FastMath.interpolateLinear(random.nextFloat(), color.a, colorTwo.a);
+        } else {
+          output.r = FastMath.interpolateLinear(FastMath.nextRandomFloat(), color.r, colorTwo.r);
+          output.g = FastMath.interpolateLinear(FastMath.nextRandomFloat(), color.g, colorTwo.g);
+          output.b = FastMath.interpolateLinear(FastMath.nextRandomFloat(), color.b, colorTwo.b);
+          output.a = FastMath.interpolateLinear(FastMath.nextRandomFloat(), color.a, colorTwo.a);
+        }
       break;
       default: break;
     }
@@ -31,6 +31,7 @@
  */
 package com.epaga.particles.valuetypes;
 
+import com.epaga.particles.ParticleRandom;
 import com.jme3.export.*;
 import com.jme3.math.FastMath;
 
@@ -108,8 +109,24 @@ public class ValueType implements Savable, Cloneable {
    * @return
    */
   public float getValue(float blendTime, float particleRandomValue) {
+    return getValue(blendTime, particleRandomValue, null);
+  }
+
+  /**
+   * Get Value
+   * Same as getValue(float, float) but random values are drawn from the given generator
+   *
+   * @param blendTime - How far along the particles lifecycle is 0-1
+   * @param particleRandomValue - Generated every time a particle is born for calculations like between two curves
+   * @param random - The generator used by the RANDOM type, FastMath is used when null
+   * @return
+   */
+  public float getValue(float blendTime, float particleRandomValue, ParticleRandom random) {
     if (type == Type.CONSTANT) return value;
-    if (type == Type.RANDOM) return FastMath.nextRandomFloat() * (max - value) + value;
+    if (type == Type.RANDOM) {
+      float r = random != null ? random.nextFloat() : FastMath.nextRandomFloat();
+      return r * (max - value) + value;
+    }
     if (type == Type.CURVE) return curveOne.getValue(blendTime);
     if (type == Type.RANDOM_BETWEEN_CURVES) {
       float f1 = curveOne.getValue(blendTime);
@@ -172,6 +189,16 @@ public class ValueType implements Savable, Cloneable {
     return type;
   }
 
+  /**
+   * Returns true if reading a value draws from a random number generator rather than
+   * depending only on the time and the particle's random value
+   *
+   * @return True if the value draws new random numbers
+   */
+  public boolean drawsRandom() {
+    return type == Type.RANDOM;
+  }
+
   public void set(ValueType value) {
     this.type = value.type;
     this.value = value.value;
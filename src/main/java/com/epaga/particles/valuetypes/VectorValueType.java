@@ -31,6 +31,7 @@
  */
 package com.epaga.particles.valuetypes;
 
+import com.epaga.particles.ParticleRandom;
 import com.jme3.export.*;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
@@ -62,8 +63,6 @@ public class VectorValueType implements Savable, Cloneable {
   private Curve y2 = null;
   private Curve z2 = null;
 
-  private transient Vector3f tempValue = new Vector3f();
-
 
   public VectorValueType() {
 
@@ -81,6 +80,19 @@ public class VectorValueType implements Savable, Cloneable {
 
 
   public Vector3f getValue3f(float time, float particleRandom, Vector3f store) {
+    return getValue3f(time, particleRandom, null, store);
+  }
+
+  /**
+   * Same as getValue3f(float, float, Vector3f) but random values are drawn from the given generator
+   *
+   * @param time - How far along the particles lifecycle is 0-1
+   * @param particleRandom - Generated every time a particle is born for calculations like between two curves
+   * @param random - The generator used by the RANDOM type, FastMath is used when null
+   * @param store - Where to store the result, a new vector is created when null
+   * @return The value
+   */
+  public Vector3f getValue3f(float time, float particleRandom, ParticleRandom random, Vector3f store) {
     Vector3f result = null;
     if (store != null) {
       result = store;
@@ -91,9 +103,15 @@ public class VectorValueType implements Savable, Cloneable {
     switch (type) {
       case CONSTANT: result.set(value); break;
       case RANDOM:
-        result.x = FastMath.interpolateLinear(FastMath.nextRandomFloat(), value.x, second.x);
-        result.y = FastMath.interpolateLinear(FastMath.nextRandomFloat(), value.y, second.y);
-        result.z = FastMath.interpolateLinear(FastMath.nextRandomFloat(), value.z, second.z);
+        if (random != null) {
+          result.x = FastMath.interpolateLinear(random.nextFloat(), value.x, second.x);
+          result.y = FastMath.interpolateLinear(random.nextFloat(), value.y, second.y);
+          result.z = FastMath.interpolateLinear(random.nextFloat(), value.z, second.z);
+        } else {
+          result.x = FastMath.interpolateLinear(FastMath.nextRandomFloat(), value.x, second.x);
+          result.y = FastMath.interpolateLinear(FastMath.nextRandomFloat(), value.y, second.y);
+          result.z = FastMath.interpolateLinear(FastMath.nextRandomFloat(), value.z, second.z);
+        }
       break;
       case CURVE:
         result.x = x1.getValue(time);
@@ -101,15 +119,9 @@ public class VectorValueType implements Savable, Cloneable {
         result.z = z1.getValue(time);
       break;
       case RANDOM_BETWEEN_CURVES:
-        result.x = x1.getValue(time);
-        result.y = y1.getValue(time);
-        result.z = z1.getValue(time);
-
-        tempValue.x = x2.getValue(time);
-        tempValue.y = y2.getValue(time);
-        tempValue.z = z2.getValue(time);
-
-        result.interpolateLocal(tempValue, particleRandom);
+        result.x = FastMath.interpolateLinear(particleRandom, x1.getValue(time), x2.getValue(time));
+        result.y = FastMath.interpolateLinear(particleRandom, y1.getValue(time), y2.getValue(time));
+        result.z = FastMath.interpolateLinear(particleRandom, z1.getValue(time), z2.getValue(time));
       break;
       default: break;
     }
@@ -201,6 +213,16 @@ public class VectorValueType implements Savable, Cloneable {
     return type;
   }
 
+  /**
+   * Returns true if reading a value draws from a random number generator rather than
+   * depending only on the time and the particle's random value
+   *
+   * @return True if the value draws new random numbers
+   */
+  public boolean drawsRandom() {
+    return type == Type.RANDOM;
+  }
+
   @Override
   public void write(JmeExporter ex) throws IOException {
     OutputCapsule oc = ex.getCapsule(this);
@@ -0,0 +1,45 @@
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+uniform mat4 g_WorldViewProjectionMatrix;
+
+uniform vec3 m_BillboardLeft;
+uniform vec3 m_BillboardUp;
+uniform vec3 m_BillboardDirection;
+
+// quad corner, x runs along the billboard's left and y along its up
+attribute vec3 inPosition;
+attribute vec2 inTexCoord;
+
+// per instance: center and size
+attribute vec4 inTexCoord2;
+// per instance: rotation around the billboard direction and sprite frame
+attribute vec2 inTexCoord3;
+// per instance: color
+attribute vec4 inColor;
+
+varying vec4 color;
+
+#ifdef USE_TEXTURE
+uniform int m_SpriteCols;
+uniform int m_SpriteRows;
+varying vec4 texCoord;
+#endif
+
+void main(){
+    // rotate the billboard axes around the direction, both are perpendicular to it
+    vec3 axis = normalize(m_BillboardDirection);
+    float c = cos(inTexCoord3.x);
+    float s = sin(inTexCoord3.x);
+    vec3 left = m_BillboardLeft * c + cross(axis, m_BillboardLeft) * s;
+    vec3 up = m_BillboardUp * c + cross(axis, m_BillboardUp) * s;
+
+    vec3 pos = inTexCoord2.xyz + (left * inPosition.x + up * inPosition.y) * inTexCoord2.w;
+    gl_Position = g_WorldViewProjectionMatrix * vec4(pos, 1.0);
+    color = inColor;
+
+    #ifdef USE_TEXTURE
+        vec2 images = vec2(float(m_SpriteCols), float(m_SpriteRows));
+        float row = floor((inTexCoord3.y + 0.5) / images.x);
+        float col = inTexCoord3.y - row * images.x;
+        texCoord = vec4((vec2(col, row) + inTexCoord) / images, 0.0, 0.0);
+    #endif
+}
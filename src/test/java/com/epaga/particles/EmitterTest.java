@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles;
+
+import com.epaga.particles.emittershapes.EmitterSphere;
+import com.epaga.particles.influencers.ParticleInfluencer;
+import com.epaga.particles.influencers.SizeInfluencer;
+import com.epaga.particles.particle.ParticleComponent;
+import com.epaga.particles.particle.ParticleData;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests for particle allocation and the emitter simulation
+ *
+ * @author Jeddic
+ */
+public class EmitterTest {
+
+  /**
+   * Counts the particles it is run on that are already past the end of their life
+   */
+  public static class ExpiredCheckInfluencer extends ParticleInfluencer {
+
+    final AtomicInteger expiredUpdates = new AtomicInteger();
+
+    @Override
+    public void update(ParticleData p, float tpf) {
+      if (p.life <= 0) {
+        expiredUpdates.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void initialize(ParticleData p) {
+    }
+
+    @Override
+    public void reset(ParticleData p) {
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+      return true;
+    }
+  }
+
+  static Emitter createEmitter(int maxParticles) {
+    Emitter emitter = new Emitter("test", null, maxParticles);
+    emitter.setShape(new EmitterSphere());
+    emitter.setRandomSeed(42);
+    return emitter;
+  }
+
+  private static Set<Integer> activeIndexes(Emitter emitter) {
+    Set<Integer> indexes = new HashSet<>();
+    emitter.forEachParticle(p -> indexes.add(p.index));
+    return indexes;
+  }
+
+  @Test
+  public void burstFillsEveryFreeSlotOnce() {
+    Emitter emitter = createEmitter(64);
+    assertEquals(64, emitter.getFreeParticleCount());
+    assertEquals(64, emitter.emitBurst(100));
+    assertEquals(0, emitter.getFreeParticleCount());
+    assertEquals(64, emitter.getActiveParticleCount());
+    assertEquals(64, activeIndexes(emitter).size());
+    assertEquals(0, emitter.emitBurst(1));
+  }
+
+  @Test
+  public void killedSlotsAreReused() {
+    Emitter emitter = createEmitter(64);
+    emitter.emitBurst(64);
+    assertEquals(32, emitter.killParticles(p -> p.index % 2 == 0));
+    assertEquals(32, emitter.getFreeParticleCount());
+    assertEquals(32, emitter.emitBurst(40));
+    assertEquals(0, emitter.getFreeParticleCount());
+    assertEquals(64, activeIndexes(emitter).size());
+  }
+
+  @Test
+  public void resettingAnIdleParticleDoesNotFreeItTwice() {
+    Emitter emitter = createEmitter(16);
+    emitter.emitBurst(16);
+    emitter.killParticle(5);
+    emitter.killParticle(5);
+    assertEquals(1, emitter.getFreeParticleCount());
+    assertEquals(15, emitter.getActiveParticleCount());
+    assertEquals(1, emitter.emitBurst(4));
+    assertEquals(16, activeIndexes(emitter).size());
+  }
+
+  @Test
+  public void singleEmissionsTakeTheLastFreedSlot() {
+    Emitter emitter = createEmitter(16);
+    emitter.emitBurst(16);
+    emitter.killParticle(3);
+    emitter.killParticle(11);
+    emitter.emitNextParticle();
+    Set<Integer> indexes = activeIndexes(emitter);
+    assertEquals(15, indexes.size());
+    assertEquals(true, indexes.contains(11));
+    assertEquals(false, indexes.contains(3));
+  }
+
+  @Test
+  public void parallelUpdateSkipsParticlesThatDie() {
+    ExpiredCheckInfluencer check = new ExpiredCheckInfluencer();
+    Emitter parallel = new Emitter("parallel", null, 256, check);
+    parallel.setShape(new EmitterSphere());
+    parallel.setRandomSeed(42);
+    parallel.setEmissionsPerSecond(60);
+    parallel.setParticlesPerEmission(4);
+    parallel.setParallelUpdate(true);
+    parallel.setParallelChunkSize(16);
+    Emitter serial = new Emitter("serial", null, 256, new ExpiredCheckInfluencer());
+    serial.setShape(new EmitterSphere());
+    serial.setRandomSeed(42);
+    serial.setEmissionsPerSecond(60);
+    serial.setParticlesPerEmission(4);
+    for (int i = 0; i < 300; i++) {
+      parallel.simulate(1 / 60f);
+      serial.simulate(1 / 60f);
+      assertEquals(serial.getActiveParticleCount(), parallel.getActiveParticleCount());
+    }
+    assertEquals(0, check.expiredUpdates.get());
+    assertEquals(parallel.getActiveParticleCount(), activeIndexes(parallel).size());
+  }
+
+  private static Emitter createLoopingEmitter(int maxParticles) {
+    Emitter emitter = createEmitter(maxParticles);
+    emitter.setEmissionsPerSecond(60);
+    emitter.setParticlesPerEmission(2);
+    emitter.setLifeFixedDuration(3f);
+    emitter.setDuration(10);
+    emitter.setLooping(true);
+    return emitter;
+  }
+
+  @Test
+  public void preCalculateEmitsAsManyParticlesAsFrameByFrame() {
+    Emitter preCalculated = createLoopingEmitter(1024);
+    preCalculated.setPreCalculate(true);
+    preCalculated.setPreCalculateTime(2f);
+    preCalculated.setPreCalculateStep(0.25f);
+    preCalculated.simulate(0);
+    Emitter frames = createLoopingEmitter(1024);
+    for (int i = 0; i < 120; i++) {
+      frames.simulate(1 / 60f);
+    }
+    assertEquals(240, frames.getActiveParticleCount(), 4);
+    assertEquals(frames.getActiveParticleCount(), preCalculated.getActiveParticleCount(), 4);
+  }
+
+  @Test
+  public void longStepsStopAtTheEmissionLimit() {
+    Emitter emitter = createLoopingEmitter(1024);
+    emitter.setMaxEmissionsPerStep(10);
+    emitter.setPreCalculate(true);
+    emitter.setPreCalculateTime(1f);
+    emitter.setPreCalculateStep(1f);
+    emitter.simulate(0);
+    assertEquals(20, emitter.getActiveParticleCount());
+    // the dropped time is not made up for on the next step
+    emitter.simulate(1 / 60f);
+    assertEquals(22, emitter.getActiveParticleCount(), 2);
+  }
+
+  @Test
+  public void framesEmitOnceWithTheDefaultInterval() {
+    // emissionsPerSecond is never set, so the interval is far shorter than a frame
+    Emitter emitter = createEmitter(1024);
+    emitter.setParticlesPerEmission(2);
+    emitter.setLifeFixedDuration(3f);
+    emitter.setDuration(10);
+    for (int i = 0; i < 60; i++) {
+      emitter.simulate(1 / 60f);
+    }
+    assertEquals(120, emitter.getActiveParticleCount());
+  }
+
+  @Test
+  public void longFramesEmitOnce() {
+    Emitter emitter = createLoopingEmitter(1024);
+    emitter.simulate(1f);
+    assertEquals(2, emitter.getActiveParticleCount());
+  }
+
+  @Test
+  public void skippedLodFramesEmitTheirParticles() {
+    Emitter distant = createLoopingEmitter(1024);
+    distant.addLodLevel(new EmitterLodLevel(10, 4, 1, false));
+    Camera cam = new Camera(640, 480);
+    cam.setLocation(new Vector3f(0, 0, 100));
+    distant.updateLodLevel(cam);
+    assertEquals(4, distant.getCurrentLodLevel().getUpdateInterval());
+    Emitter near = createLoopingEmitter(1024);
+    for (int i = 0; i < 120; i++) {
+      distant.simulate(1 / 60f);
+      near.simulate(1 / 60f);
+    }
+    assertEquals(near.getActiveParticleCount(), distant.getActiveParticleCount(), 4);
+  }
+
+  @Test
+  public void resumedEmitterCatchesUp() {
+    Emitter suspended = createLoopingEmitter(1024);
+    suspended.setCullOffscreen(true);
+    suspended.setOffscreenDelay(0.5f);
+    Emitter running = createLoopingEmitter(1024);
+    for (int i = 0; i < 180; i++) {
+      suspended.simulate(1 / 60f);
+      running.simulate(1 / 60f);
+    }
+    assertEquals(true, suspended.isSuspended());
+    // shown again, renderEmitter resets the off screen time the same way
+    suspended.setCullOffscreen(false);
+    suspended.setCullOffscreen(true);
+    suspended.simulate(1 / 60f);
+    running.simulate(1 / 60f);
+    assertEquals(false, suspended.isSuspended());
+    assertEquals(running.getActiveParticleCount(), suspended.getActiveParticleCount(), 12);
+  }
+
+  @Test
+  public void suspendedWorldSpaceBoundsFollowTheEmitter() {
+    Emitter emitter = createLoopingEmitter(1024);
+    emitter.setParticlesFollowEmitter(false);
+    emitter.setCullOffscreen(true);
+    emitter.setOffscreenDelay(0.5f);
+    for (int i = 0; i < 60; i++) {
+      emitter.updateEmitter(1 / 60f);
+    }
+    assertEquals(true, emitter.isSuspended());
+    Vector3f moved = new Vector3f(100, 0, 0);
+    emitter.setLocalTranslation(moved);
+    emitter.updateGeometricState();
+    emitter.updateEmitter(1 / 60f);
+    assertEquals(true, emitter.getParticleBound().contains(moved));
+  }
+
+  @Test
+  public void finishIsReportedFromTheBoundsUpdate() {
+    Emitter emitter = createEmitter(64);
+    emitter.setEmissionsPerSecond(60);
+    emitter.setParticlesPerEmission(1);
+    emitter.setLifeFixedDuration(0.5f);
+    emitter.setDuration(0.5f);
+    emitter.setLooping(false);
+    AtomicInteger finished = new AtomicInteger();
+    emitter.addEmitterListener(e -> finished.incrementAndGet());
+    for (int i = 0; i < 120; i++) {
+      emitter.simulate(1 / 60f);
+    }
+    assertEquals(true, emitter.isDormant());
+    assertEquals(0, finished.get());
+    emitter.updateSimulatedBound();
+    assertEquals(1, finished.get());
+    emitter.updateEmitter(1 / 60f);
+    assertEquals(1, finished.get());
+  }
+
+  @Test
+  public void influencersWithoutDeclaredComponentsGetAllOfThem() {
+    Emitter declared = new Emitter("declared", null, 16, new SizeInfluencer());
+    assertEquals(EnumSet.noneOf(ParticleComponent.class), declared.getParticleComponents());
+    Emitter undeclared = new Emitter("undeclared", null, 16, new SizeInfluencer(), new ExpiredCheckInfluencer());
+    undeclared.setShape(new EmitterSphere());
+    assertEquals(EnumSet.allOf(ParticleComponent.class), undeclared.getParticleComponents());
+    undeclared.emitBurst(1);
+    undeclared.forEachParticle(p -> {
+      assertNotNull(p.initialVelocity);
+      assertNotNull(p.randomOffset);
+      assertNotNull(p.emissionNormal);
+      assertNotNull(p.rotationSpeed);
+      assertNotNull(p.trailSegments);
+    });
+  }
+
+  private static void killDuringIteration(boolean useStorage) {
+    Emitter emitter = createEmitter(64);
+    emitter.setPackParticles(true);
+    emitter.setUseParticleStorage(useStorage);
+    emitter.emitBurst(64);
+    // tag every particle so it can be followed as packing moves it around
+    emitter.forEachParticle(p -> p.spriteCol = p.index);
+    Map<Integer, Integer> visits = new HashMap<>();
+    emitter.forEachParticle(p -> {
+      visits.merge(p.spriteCol, 1, Integer::sum);
+      if (p.spriteCol % 3 == 0) {
+        emitter.killParticle(p);
+      }
+    });
+    assertEquals(64, visits.size());
+    for (int count : visits.values()) {
+      assertEquals(1, count);
+    }
+    assertEquals(42, emitter.getActiveParticleCount());
+    assertEquals(42, emitter.getParticleEnd());
+    Set<Integer> left = new HashSet<>();
+    emitter.forEachParticle(p -> {
+      assertEquals(true, p.spriteCol % 3 != 0);
+      left.add(p.spriteCol);
+    });
+    assertEquals(42, left.size());
+  }
+
+  @Test
+  public void killingWhilePackedVisitsEveryParticleOnce() {
+    killDuringIteration(false);
+  }
+
+  @Test
+  public void killingWhilePackedInStorageVisitsEveryParticleOnce() {
+    killDuringIteration(true);
+  }
+
+  @Test
+  public void killingWhileIteratingUnpackedStorageFreesEachSlot() {
+    Emitter emitter = createEmitter(16);
+    emitter.setUseParticleStorage(true);
+    emitter.emitBurst(16);
+    emitter.forEachParticle(p -> p.spriteCol = p.index);
+    emitter.forEachParticle(p -> {
+      if (p.index % 2 == 0) {
+        emitter.killParticle(p);
+      }
+    });
+    assertEquals(8, emitter.getActiveParticleCount());
+    assertEquals(8, emitter.getFreeParticleCount());
+    // forEachParticle stops after getActiveParticleCount() particles, count the slots directly
+    int activeSlots = 0;
+    for (boolean active : emitter.getParticleStorage().active) {
+      activeSlots += active ? 1 : 0;
+    }
+    assertEquals(8, activeSlots);
+    // the freed slots are refilled without touching the survivors
+    emitter.emitBurst(8);
+    assertEquals(16, activeIndexes(emitter).size());
+    Set<Integer> survivors = new HashSet<>();
+    emitter.forEachParticle(p -> {
+      if (p.index % 2 == 1) {
+        assertEquals(p.index, p.spriteCol);
+        survivors.add(p.index);
+      }
+    });
+    assertEquals(8, survivors.size());
+    assertEquals(0, emitter.getFreeParticleCount());
+  }
+
+  @Test
+  public void unpackedIterationOnlyVisitsActiveParticles() {
+    Emitter emitter = createEmitter(64);
+    emitter.emitBurst(64);
+    emitter.killParticles(p -> p.index < 60);
+    Map<ParticleData, Boolean> seen = new IdentityHashMap<>();
+    emitter.forEachParticle(p -> seen.put(p, p.active));
+    assertEquals(4, seen.size());
+    assertEquals(false, seen.containsValue(false));
+    assertEquals(4, emitter.killAllParticles());
+    assertEquals(0, emitter.getActiveParticleCount());
+  }
+
+  @Test
+  public void parallelUpdateGathersTheSameBounds() {
+    Emitter parallel = createLoopingEmitter(1024);
+    parallel.setParallelUpdate(true);
+    parallel.setParallelChunkSize(16);
+    Emitter serial = createLoopingEmitter(1024);
+    for (int i = 0; i < 90; i++) {
+      parallel.updateEmitter(1 / 60f);
+      serial.updateEmitter(1 / 60f);
+    }
+    BoundingBox expected = serial.getParticleBound();
+    BoundingBox actual = parallel.getParticleBound();
+    assertEquals(0, expected.getCenter().distance(actual.getCenter()), 0.0001f);
+    assertEquals(expected.getXExtent(), actual.getXExtent(), 0.0001f);
+    assertEquals(expected.getYExtent(), actual.getYExtent(), 0.0001f);
+    assertEquals(expected.getZExtent(), actual.getZExtent(), 0.0001f);
+  }
+}
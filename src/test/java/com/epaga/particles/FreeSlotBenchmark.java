@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles;
+
+/**
+ * Measures how fast particles are emitted into a nearly full pool, the case the free slot stack is there for.
+ * Run the main method, the emitter kills a few particles and refills them every round.
+ *
+ * @author Jeddic
+ */
+public class FreeSlotBenchmark {
+
+  private static final int MAX_PARTICLES = 100000;
+  private static final int FREED_PER_ROUND = 16;
+  private static final int ROUNDS = 20000;
+
+  public static void main(String[] args) {
+    Emitter emitter = EmitterTest.createEmitter(MAX_PARTICLES);
+    emitter.emitBurst(MAX_PARTICLES);
+
+    // warm up before timing
+    run(emitter, ROUNDS / 4);
+
+    long start = System.nanoTime();
+    int emitted = run(emitter, ROUNDS);
+    double ms = (System.nanoTime() - start) / 1000000.0;
+    System.out.printf("%d particles, %d emissions in %.1f ms, %.0f emissions/ms%n", MAX_PARTICLES, emitted, ms,
+        emitted / ms);
+  }
+
+  private static int run(Emitter emitter, int rounds) {
+    int emitted = 0;
+    int next = 0;
+    for (int r = 0; r < rounds; r++) {
+      for (int i = 0; i < FREED_PER_ROUND; i++) {
+        emitter.killParticle(next);
+        next = (next + 7919) % MAX_PARTICLES;
+      }
+      for (int i = 0; i < FREED_PER_ROUND; i++) {
+        emitter.emitNextParticle();
+        emitted++;
+      }
+    }
+    return emitted;
+  }
+}
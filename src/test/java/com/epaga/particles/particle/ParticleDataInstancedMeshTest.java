@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.epaga.particles.Emitter;
+import com.epaga.particles.emittershapes.EmitterSphere;
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.renderer.ViewPort;
+import com.jme3.shader.VarType;
+import com.jme3.scene.VertexBuffer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the per-particle records written by ParticleDataInstancedMesh
+ *
+ * @author Jeddic
+ */
+public class ParticleDataInstancedMeshTest {
+
+  private static final float EPSILON = 0.0001f;
+
+  private static class Record {
+    float x, y, z, size, rotation, frame;
+    int abgr;
+  }
+
+  /**
+   * A material with the parameters the mesh sets, the emitter only attaches the particle geometry once it has a
+   * material
+   */
+  private static Material createMaterial() {
+    MaterialDef def = new MaterialDef(null, "InstancedParticleTest");
+    def.addMaterialParam(VarType.Vector3, "BillboardLeft", null);
+    def.addMaterialParam(VarType.Vector3, "BillboardUp", null);
+    def.addMaterialParam(VarType.Vector3, "BillboardDirection", null);
+    def.addMaterialParam(VarType.Int, "SpriteCols", null);
+    def.addMaterialParam(VarType.Int, "SpriteRows", null);
+    return new Material(def);
+  }
+
+  private static Emitter createEmitter(boolean useStorage, boolean pack) {
+    Emitter emitter = new Emitter("test", createMaterial(), 32);
+    emitter.setShape(new EmitterSphere());
+    emitter.setRandomSeed(42);
+    emitter.setUseParticleStorage(useStorage);
+    emitter.setPackParticles(pack);
+    emitter.setParticleMeshType(ParticleDataInstancedMesh.class, null);
+    emitter.getMesh().setImagesXY(4, 2);
+    return emitter;
+  }
+
+  private static ParticleDataInstancedMesh render(Emitter emitter) {
+    emitter.renderEmitter(null, new ViewPort("test", ParticleDataTriMeshTest.createCamera()));
+    return (ParticleDataInstancedMesh) emitter.getMesh();
+  }
+
+  /**
+   * Emits a few particles, gives them distinct sprites, rolls and colors and kills every third one
+   */
+  private static List<Record> emitParticles(Emitter emitter) {
+    emitter.emitBurst(20);
+    emitter.simulate(1 / 60f);
+    emitter.forEachParticle(p -> {
+      p.spriteCol = p.index % 4;
+      p.spriteRow = p.index % 2;
+      p.angles.z = p.index * 0.1f;
+      p.color.set(p.index / 32f, 0.5f, 0.25f, 1);
+      p.size = 1 + p.index;
+    });
+    emitter.killParticles(p -> p.index % 3 == 0);
+
+    // the records are written in particle order
+    Record[] byIndex = new Record[emitter.getMaxParticles()];
+    emitter.forEachParticle(p -> {
+      Record r = new Record();
+      r.x = p.position.x;
+      r.y = p.position.y;
+      r.z = p.position.z;
+      r.size = p.size;
+      r.rotation = p.angles.z;
+      r.frame = p.spriteRow * 4 + p.spriteCol;
+      r.abgr = p.color.asIntABGR();
+      byIndex[p.index] = r;
+    });
+    List<Record> expected = new ArrayList<>();
+    for (Record r : byIndex) {
+      if (r != null) {
+        expected.add(r);
+      }
+    }
+    return expected;
+  }
+
+  private static void assertRecords(List<Record> expected, ParticleDataInstancedMesh mesh) {
+    assertEquals(expected.size(), mesh.getInstanceRecordCount());
+    assertEquals(expected.size(), mesh.getInstanceCount());
+    FloatBuffer centers = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.TexCoord2).getData();
+    FloatBuffer frames = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.TexCoord3).getData();
+    ByteBuffer colors = (ByteBuffer) mesh.getBuffer(VertexBuffer.Type.Color).getData();
+    assertEquals(expected.size() * 4, centers.limit());
+    assertEquals(expected.size() * 2, frames.limit());
+    assertEquals(expected.size() * 4, colors.limit());
+    for (int i = 0; i < expected.size(); i++) {
+      Record r = expected.get(i);
+      assertEquals(r.x, centers.get(i * 4), EPSILON);
+      assertEquals(r.y, centers.get(i * 4 + 1), EPSILON);
+      assertEquals(r.z, centers.get(i * 4 + 2), EPSILON);
+      assertEquals(r.size, centers.get(i * 4 + 3), EPSILON);
+      assertEquals(r.rotation, frames.get(i * 2), EPSILON);
+      assertEquals(r.frame, frames.get(i * 2 + 1), EPSILON);
+      assertEquals(r.abgr, colors.getInt(i * 4));
+    }
+  }
+
+  @Test
+  public void recordsHoldTheLiveParticles() {
+    Emitter emitter = createEmitter(false, false);
+    List<Record> expected = emitParticles(emitter);
+    assertRecords(expected, render(emitter));
+  }
+
+  @Test
+  public void storageWritesTheSameRecords() {
+    Emitter emitter = createEmitter(true, false);
+    List<Record> expected = emitParticles(emitter);
+    assertRecords(expected, render(emitter));
+  }
+
+  @Test
+  public void packedParticlesOnlyWriteTheActiveCount() {
+    Emitter emitter = createEmitter(false, true);
+    List<Record> expected = emitParticles(emitter);
+    assertEquals(emitter.getActiveParticleCount(), expected.size());
+    assertRecords(expected, render(emitter));
+  }
+
+  @Test
+  public void emptyEmitterDrawsOneEmptyRecord() {
+    Emitter emitter = createEmitter(false, false);
+    ParticleDataInstancedMesh mesh = render(emitter);
+    assertEquals(0, mesh.getInstanceRecordCount());
+    // the renderer always draws one instance, it has to be a collapsed quad
+    assertEquals(1, mesh.getInstanceCount());
+    FloatBuffer centers = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.TexCoord2).getData();
+    assertEquals(4, centers.limit());
+    assertEquals(0, centers.get(3), 0);
+    ByteBuffer colors = (ByteBuffer) mesh.getBuffer(VertexBuffer.Type.Color).getData();
+    assertEquals(0, colors.getInt(0));
+  }
+
+  @Test
+  public void materialGetsTheSpriteLayout() {
+    Emitter emitter = createEmitter(false, false);
+    render(emitter);
+    assertEquals(4, emitter.getMaterial().getParam("SpriteCols").getValue());
+    assertEquals(2, emitter.getMaterial().getParam("SpriteRows").getValue());
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.epaga.particles.Emitter;
+import com.epaga.particles.emittershapes.EmitterSphere;
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.shape.Box;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the instance records of ParticleDataInstancedTemplateMesh put the template vertices where the
+ * emitter's world transform puts the particles
+ *
+ * @author Jeddic
+ */
+public class ParticleDataInstancedTemplateMeshTest {
+
+  private static final float EPSILON = 0.001f;
+
+  private static class Expected {
+    final Vector3f position = new Vector3f();
+    final Quaternion rotation = new Quaternion();
+    float size;
+    int abgr;
+  }
+
+  private static Emitter createEmitter(Mesh template, boolean followEmitter, boolean useStorage) {
+    Emitter emitter = new Emitter("test", new Material(new MaterialDef(null, "InstancedTemplateTest")), 16);
+    emitter.setShape(new EmitterSphere());
+    emitter.setRandomSeed(42);
+    emitter.setParticlesFollowEmitter(followEmitter);
+    emitter.setUseParticleStorage(useStorage);
+    emitter.setParticleMeshType(ParticleDataInstancedTemplateMesh.class, template);
+    emitter.setLocalTranslation(3, -2, 5);
+    emitter.setLocalRotation(new Quaternion().fromAngles(0.3f, 1.1f, -0.4f));
+    // uniform, a non uniform scale would shear the rotated particles
+    emitter.setLocalScale(2);
+    emitter.updateGeometricState();
+    return emitter;
+  }
+
+  private static List<Expected> emitParticles(Emitter emitter) {
+    emitter.emitBurst(12);
+    emitter.simulate(1 / 60f);
+    emitter.forEachParticle(p -> {
+      p.angles.set(0.25f * p.index, 0.5f, 0);
+      p.size = 0.5f + 0.1f * p.index;
+    });
+    // one particle without a rotation
+    emitter.forEachParticle(p -> {
+      if (p.index == 4) {
+        p.angles.zero();
+      }
+    });
+    emitter.killParticles(p -> p.index % 5 == 0);
+
+    Expected[] byIndex = new Expected[emitter.getMaxParticles()];
+    emitter.forEachParticle(p -> {
+      Expected e = new Expected();
+      e.position.set(p.position);
+      float angle = p.angles.x + p.angles.y + p.angles.z;
+      if (angle != 0) {
+        e.rotation.fromAngleAxis(angle, p.velocity);
+      }
+      e.size = p.size;
+      e.abgr = p.color.asIntABGR();
+      byIndex[p.index] = e;
+    });
+    List<Expected> expected = new ArrayList<>();
+    for (Expected e : byIndex) {
+      if (e != null) {
+        expected.add(e);
+      }
+    }
+    return expected;
+  }
+
+  /**
+   * The normal rotation of Instancing.glsllib, with the quaternion taken from the w components of the record
+   */
+  private static Vector3f transformNormal(Vector3f normal, float qx, float qy, float qz, float qw) {
+    Vector3f q = new Vector3f(qx, qy, qz);
+    Vector3f inner = normal.cross(q).addLocal(normal.mult(qw));
+    return normal.add(inner.cross(q).multLocal(2));
+  }
+
+  private static void assertRecords(Emitter emitter, Mesh template, List<Expected> expected) {
+    emitter.renderEmitter(null, new ViewPort("test", ParticleDataTriMeshTest.createCamera()));
+    ParticleDataInstancedTemplateMesh mesh = (ParticleDataInstancedTemplateMesh) emitter.getMesh();
+    assertEquals(expected.size(), mesh.getInstanceRecordCount());
+    assertEquals(expected.size(), mesh.getInstanceCount());
+
+    FloatBuffer records = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.InstanceData).getData();
+    ByteBuffer colors = (ByteBuffer) mesh.getBuffer(VertexBuffer.Type.Color).getData();
+    FloatBuffer positions = (FloatBuffer) template.getBuffer(VertexBuffer.Type.Position).getData();
+    FloatBuffer normals = (FloatBuffer) template.getBuffer(VertexBuffer.Type.Normal).getData();
+    Quaternion worldRotation = emitter.getParticlesFollowEmitter() ? emitter.getWorldRotation() : Quaternion.IDENTITY;
+
+    for (int i = 0; i < expected.size(); i++) {
+      Expected e = expected.get(i);
+      int r = i * 16;
+      assertEquals(e.abgr, colors.getInt(i * 4));
+      for (int v = 0; v < positions.limit(); v += 3) {
+        Vector3f vertex = new Vector3f(positions.get(v), positions.get(v + 1), positions.get(v + 2));
+
+        // where the non instanced template mesh puts the vertex, taken to world space
+        Vector3f local = e.rotation.mult(vertex.mult(e.size)).addLocal(e.position);
+        Vector3f world = emitter.getParticlesFollowEmitter() ? emitter.localToWorld(local, null) : local;
+
+        float x = records.get(r) * vertex.x + records.get(r + 4) * vertex.y + records.get(r + 8) * vertex.z
+            + records.get(r + 12);
+        float y = records.get(r + 1) * vertex.x + records.get(r + 5) * vertex.y + records.get(r + 9) * vertex.z
+            + records.get(r + 13);
+        float z = records.get(r + 2) * vertex.x + records.get(r + 6) * vertex.y + records.get(r + 10) * vertex.z
+            + records.get(r + 14);
+        assertEquals(world.x, x, EPSILON);
+        assertEquals(world.y, y, EPSILON);
+        assertEquals(world.z, z, EPSILON);
+
+        Vector3f normal = new Vector3f(normals.get(v), normals.get(v + 1), normals.get(v + 2));
+        Vector3f expectedNormal = worldRotation.mult(e.rotation.mult(normal));
+        Vector3f actualNormal = transformNormal(normal, records.get(r + 3), records.get(r + 7), records.get(r + 11),
+            records.get(r + 15));
+        assertEquals(expectedNormal.x, actualNormal.x, EPSILON);
+        assertEquals(expectedNormal.y, actualNormal.y, EPSILON);
+        assertEquals(expectedNormal.z, actualNormal.z, EPSILON);
+      }
+    }
+  }
+
+  @Test
+  public void recordsMatchTheEmitterTransform() {
+    Box template = new Box(0.5f, 0.25f, 1);
+    Emitter emitter = createEmitter(template, true, false);
+    assertRecords(emitter, template, emitParticles(emitter));
+  }
+
+  @Test
+  public void worldSpaceRecordsIgnoreTheEmitterTransform() {
+    Box template = new Box(0.5f, 0.25f, 1);
+    Emitter emitter = createEmitter(template, false, false);
+    assertRecords(emitter, template, emitParticles(emitter));
+  }
+
+  @Test
+  public void storageWritesTheSameRecords() {
+    Box template = new Box(0.5f, 0.25f, 1);
+    Emitter emitter = createEmitter(template, true, true);
+    assertRecords(emitter, template, emitParticles(emitter));
+  }
+
+  @Test
+  public void emptyEmitterDrawsOneCollapsedInstance() {
+    Box template = new Box(0.5f, 0.25f, 1);
+    Emitter emitter = createEmitter(template, true, false);
+    emitter.renderEmitter(null, new ViewPort("test", ParticleDataTriMeshTest.createCamera()));
+    ParticleDataInstancedTemplateMesh mesh = (ParticleDataInstancedTemplateMesh) emitter.getMesh();
+    assertEquals(0, mesh.getInstanceRecordCount());
+    assertEquals(1, mesh.getInstanceCount());
+    FloatBuffer records = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.InstanceData).getData();
+    for (int i = 0; i < 16; i++) {
+      assertEquals(0, records.get(i), 0);
+    }
+  }
+}
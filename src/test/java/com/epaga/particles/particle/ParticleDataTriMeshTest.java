@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.epaga.particles.BillboardMode;
+import com.epaga.particles.Emitter;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the tri mesh billboards against the quaternion rotation they replaced
+ *
+ * @author Jeddic
+ */
+public class ParticleDataTriMeshTest {
+
+  private static final float EPSILON = 0.0005f;
+
+  static Camera createCamera() {
+    Camera cam = new Camera(640, 480);
+    cam.setLocation(new Vector3f(3, 4, 10));
+    cam.lookAt(new Vector3f(-1, 0, 2), Vector3f.UNIT_Y);
+    return cam;
+  }
+
+  static ParticleData[] createParticles(Emitter emitter, boolean rotated, long seed) {
+    Random random = new Random(seed);
+    ParticleData[] particles = new ParticleData[emitter.getMaxParticles()];
+    for (int i = 0; i < particles.length; i++) {
+      ParticleData p = new ParticleData();
+      p.emitter = emitter;
+      p.index = i;
+      p.active = true;
+      p.life = 1;
+      p.size = 0.5f + random.nextFloat();
+      p.position.set(random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5);
+      if (rotated) {
+        // a mix of particles turned around one, two or all three axes
+        p.angles.set(i % 2 == 0 ? (random.nextFloat() - 0.5f) * FastMath.TWO_PI : 0,
+            i % 3 == 0 ? (random.nextFloat() - 0.5f) * FastMath.TWO_PI : 0,
+            (random.nextFloat() - 0.5f) * FastMath.TWO_PI);
+      }
+      particles[i] = p;
+    }
+    return particles;
+  }
+
+  static Emitter createEmitter(int maxParticles) {
+    Emitter emitter = new Emitter("test", null, maxParticles);
+    emitter.setBillboardMode(BillboardMode.Camera);
+    return emitter;
+  }
+
+  private static void assertMatchesQuaternions(boolean rotated) {
+    Emitter emitter = createEmitter(64);
+    ParticleDataTriMesh mesh = (ParticleDataTriMesh) emitter.getMesh();
+    Camera cam = createCamera();
+    ParticleData[] particles = createParticles(emitter, rotated, 7);
+    mesh.updateParticleData(particles, cam, Matrix3f.IDENTITY);
+
+    FloatBuffer expected = BufferUtils.createVector3Buffer(particles.length * 4);
+    QuaternionBillboard reference = new QuaternionBillboard();
+    for (ParticleData p : particles) {
+      reference.putParticle(expected, cam.getLeft(), cam.getUp(), cam.getDirection(), p.position, p.angles, p.size);
+    }
+    FloatBuffer actual = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Position).getData();
+    for (int i = 0; i < expected.capacity(); i++) {
+      assertEquals("vertex component " + i, expected.get(i), actual.get(i), EPSILON);
+    }
+  }
+
+  @Test
+  public void unrotatedParticlesMatchQuaternionBillboards() {
+    assertMatchesQuaternions(false);
+  }
+
+  @Test
+  public void rotatedParticlesMatchQuaternionBillboards() {
+    assertMatchesQuaternions(true);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.epaga.particles.Emitter;
+import com.epaga.particles.emittershapes.EmitterSphere;
+import com.epaga.particles.influencers.ColorInfluencer;
+import com.epaga.particles.influencers.GravityInfluencer;
+import com.epaga.particles.influencers.ParticleInfluencer;
+import com.epaga.particles.influencers.SizeInfluencer;
+import com.epaga.particles.influencers.SpriteInfluencer;
+import com.jme3.math.Vector3f;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that emitters keeping their particles in a ParticleStorage play out the same way as emitters with
+ * particle objects.
+ *
+ * @author Jeddic
+ */
+public class ParticleStorageTest {
+
+  private static final float EPSILON = 0.0001f;
+
+  /**
+   * Moves particles through update(ParticleData, float) only, the storage versions are left to the defaults
+   */
+  public static class DriftInfluencer extends ParticleInfluencer {
+
+    @Override
+    public void update(ParticleData p, float tpf) {
+      p.velocity.x += tpf;
+      p.size += tpf;
+    }
+
+    @Override
+    public void initialize(ParticleData p) {
+      p.angles.set(1, 2, 3);
+    }
+
+    @Override
+    public void reset(ParticleData p) {
+      p.angles.zero();
+    }
+
+    @Override
+    public boolean supportsParticleStorage() {
+      return true;
+    }
+  }
+
+  private static Emitter createEmitter(boolean useStorage, ParticleInfluencer... influencers) {
+    Emitter emitter = new Emitter("test", null, 64, influencers);
+    emitter.setShape(new EmitterSphere());
+    emitter.setEmissionsPerSecond(60);
+    emitter.setParticlesPerEmission(2);
+    emitter.setRandomSeed(42);
+    emitter.setUseParticleStorage(useStorage);
+    return emitter;
+  }
+
+  private static void assertSameParticles(Emitter objects, Emitter storage) {
+    ParticleStorage store = storage.getParticleStorage();
+    assertNotNull(store);
+    assertEquals(objects.getActiveParticleCount(), storage.getActiveParticleCount());
+    ParticleData expected = new ParticleData();
+    expected.emitter = storage;
+    expected.setComponents(objects.getParticleComponents());
+    objects.forEachParticle(p -> {
+      ParticleData actual = store.load(p.index, expected);
+      assertTrue(actual.active);
+      assertEquals(p.position.x, actual.position.x, EPSILON);
+      assertEquals(p.position.y, actual.position.y, EPSILON);
+      assertEquals(p.position.z, actual.position.z, EPSILON);
+      assertEquals(p.velocity.x, actual.velocity.x, EPSILON);
+      assertEquals(p.size, actual.size, EPSILON);
+      assertEquals(p.life, actual.life, EPSILON);
+      assertEquals(p.color.r, actual.color.r, EPSILON);
+      assertEquals(p.color.a, actual.color.a, EPSILON);
+      assertEquals(p.angles.z, actual.angles.z, EPSILON);
+      assertEquals(p.spriteCol, actual.spriteCol);
+    });
+  }
+
+  @Test
+  public void storageMatchesParticleObjects() {
+    Emitter objects = createEmitter(false, new ColorInfluencer(), new SizeInfluencer(),
+        new GravityInfluencer(new Vector3f(0, 3, 0)), new SpriteInfluencer());
+    Emitter storage = createEmitter(true, new ColorInfluencer(), new SizeInfluencer(),
+        new GravityInfluencer(new Vector3f(0, 3, 0)), new SpriteInfluencer());
+    for (int i = 0; i < 90; i++) {
+      objects.simulate(1 / 60f);
+      storage.simulate(1 / 60f);
+    }
+    assertTrue(objects.getActiveParticleCount() > 0);
+    assertSameParticles(objects, storage);
+  }
+
+  @Test
+  public void defaultStorageMethodsCopyThroughParticleObjects() {
+    Emitter objects = createEmitter(false, new DriftInfluencer());
+    Emitter storage = createEmitter(true, new DriftInfluencer());
+    for (int i = 0; i < 90; i++) {
+      objects.simulate(1 / 60f);
+      storage.simulate(1 / 60f);
+    }
+    assertTrue(objects.getActiveParticleCount() > 0);
+    assertSameParticles(objects, storage);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The quaternion billboard rotation ParticleDataTriMesh used before it switched to Rodrigues' formula, kept as
+ * the reference for the tests and the benchmark. Writes the four corners of a particle quad the same way the
+ * mesh does.
+ *
+ * @author Jeddic
+ */
+class QuaternionBillboard {
+
+  private Vector3f left = new Vector3f();
+  private Vector3f up = new Vector3f();
+  private final Vector3f dir = new Vector3f();
+  private Quaternion rotStore = new Quaternion();
+  private final Quaternion tempQ = new Quaternion();
+
+  void putParticle(FloatBuffer positions, Vector3f camLeft, Vector3f camUp, Vector3f camDir, Vector3f position,
+      Vector3f angles, float size) {
+    up.set(camUp);
+    left.set(camLeft);
+    dir.set(camDir);
+
+    up.multLocal(size);
+    left.multLocal(size);
+
+    rotStore = tempQ.fromAngleAxis(angles.y, left);
+    left = rotStore.mult(left);
+    up = rotStore.mult(up);
+
+    rotStore = tempQ.fromAngleAxis(angles.x, up);
+    left = rotStore.mult(left);
+    up = rotStore.mult(up);
+
+    rotStore = tempQ.fromAngleAxis(angles.z, dir);
+    left = rotStore.mult(left);
+    up = rotStore.mult(up);
+
+    positions.put(position.x + left.x + up.x).put(position.y + left.y + up.y).put(position.z + left.z + up.z);
+    positions.put(position.x - left.x + up.x).put(position.y - left.y + up.y).put(position.z - left.z + up.z);
+    positions.put(position.x + left.x - up.x).put(position.y + left.y - up.y).put(position.z + left.z - up.z);
+    positions.put(position.x - left.x - up.x).put(position.y - left.y - up.y).put(position.z - left.z - up.z);
+  }
+}
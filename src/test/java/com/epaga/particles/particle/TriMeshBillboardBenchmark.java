@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 Greg Hoffman
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.epaga.particles.particle;
+
+import com.epaga.particles.Emitter;
+import com.jme3.math.Matrix3f;
+import com.jme3.renderer.Camera;
+import com.jme3.util.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Compares how many billboard vertices per millisecond the tri mesh writes with Rodrigues' formula against the
+ * quaternion rotation it used before. Run the main method.
+ *
+ * @author Jeddic
+ */
+public class TriMeshBillboardBenchmark {
+
+  private static final int PARTICLES = 20000;
+  private static final int ROUNDS = 200;
+
+  public static void main(String[] args) {
+    Emitter emitter = ParticleDataTriMeshTest.createEmitter(PARTICLES);
+    ParticleDataTriMesh mesh = (ParticleDataTriMesh) emitter.getMesh();
+    Camera cam = ParticleDataTriMeshTest.createCamera();
+    FloatBuffer positions = BufferUtils.createVector3Buffer(PARTICLES * 4);
+    QuaternionBillboard reference = new QuaternionBillboard();
+
+    for (boolean rotated : new boolean[] {false, true}) {
+      ParticleData[] particles = ParticleDataTriMeshTest.createParticles(emitter, rotated, 7);
+
+      // warm up both paths before timing
+      runMesh(mesh, particles, cam, ROUNDS / 4);
+      runQuaternions(reference, particles, cam, positions, ROUNDS / 4);
+
+      double quaternionMs = runQuaternions(reference, particles, cam, positions, ROUNDS);
+      double meshMs = runMesh(mesh, particles, cam, ROUNDS);
+      long vertices = (long) PARTICLES * 4 * ROUNDS;
+      System.out.printf("%s: quaternions %.0f vertices/ms, rodrigues %.0f vertices/ms%n",
+          rotated ? "rotated" : "unrotated", vertices / quaternionMs, vertices / meshMs);
+    }
+  }
+
+  private static double runMesh(ParticleDataTriMesh mesh, ParticleData[] particles, Camera cam, int rounds) {
+    long start = System.nanoTime();
+    for (int r = 0; r < rounds; r++) {
+      mesh.updateParticleData(particles, cam, Matrix3f.IDENTITY);
+    }
+    return (System.nanoTime() - start) / 1000000.0;
+  }
+
+  private static double runQuaternions(QuaternionBillboard reference, ParticleData[] particles, Camera cam,
+      FloatBuffer positions, int rounds) {
+    long start = System.nanoTime();
+    for (int r = 0; r < rounds; r++) {
+      positions.clear();
+      for (ParticleData p : particles) {
+        reference.putParticle(positions, cam.getLeft(), cam.getUp(), cam.getDirection(), p.position, p.angles,
+            p.size);
+      }
+    }
+    return (System.nanoTime() - start) / 1000000.0;
+  }
+}